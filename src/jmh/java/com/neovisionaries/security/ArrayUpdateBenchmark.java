@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2013-2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Throughput of updating a digest with arrays of primitive types.
+ *
+ * <p>
+ * {@link #perByte()} feeds the elements to {@code MessageDigest} byte
+ * by byte, which is what the array overloads did before they encoded
+ * elements in bulk. {@link #perElement()} calls the scalar overloads of
+ * {@link Digest} for each element, and {@link #bulk()} calls the array
+ * overloads. All of them hash the same bytes.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ArrayUpdateBenchmark
+{
+    @Param({ "boolean", "char", "short", "int", "long", "float", "double" })
+    public String type;
+
+    @Param({ "100000" })
+    public int size;
+
+    private MessageDigest mMessageDigest;
+    private Digest mDigest;
+    private boolean[] mBooleans;
+    private char[] mChars;
+    private short[] mShorts;
+    private int[] mInts;
+    private long[] mLongs;
+    private float[] mFloats;
+    private double[] mDoubles;
+
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException
+    {
+        mMessageDigest = MessageDigest.getInstance("SHA-256");
+        mDigest        = Digest.getInstance("SHA-256");
+
+        Random random = new Random(1);
+
+        mBooleans = new boolean[size];
+        mChars    = new char[size];
+        mShorts   = new short[size];
+        mInts     = new int[size];
+        mLongs    = new long[size];
+        mFloats   = new float[size];
+        mDoubles  = new double[size];
+
+        for (int i = 0; i < size; ++i)
+        {
+            mBooleans[i] = random.nextBoolean();
+            mChars[i]    = (char)random.nextInt();
+            mShorts[i]   = (short)random.nextInt();
+            mInts[i]     = random.nextInt();
+            mLongs[i]    = random.nextLong();
+            mFloats[i]   = random.nextFloat();
+            mDoubles[i]  = random.nextDouble();
+        }
+    }
+
+
+    @Benchmark
+    public byte[] perByte()
+    {
+        MessageDigest md = mMessageDigest;
+
+        switch (type)
+        {
+            case "boolean":
+                for (boolean value : mBooleans)
+                {
+                    md.update((byte)(value ? 1 : 0));
+                }
+                break;
+
+            case "char":
+                for (char value : mChars)
+                {
+                    update(md, value, 2);
+                }
+                break;
+
+            case "short":
+                for (short value : mShorts)
+                {
+                    update(md, value, 2);
+                }
+                break;
+
+            case "int":
+                for (int value : mInts)
+                {
+                    update(md, value, 4);
+                }
+                break;
+
+            case "long":
+                for (long value : mLongs)
+                {
+                    update(md, value, 8);
+                }
+                break;
+
+            case "float":
+                for (float value : mFloats)
+                {
+                    update(md, Float.floatToRawIntBits(value), 4);
+                }
+                break;
+
+            default:
+                for (double value : mDoubles)
+                {
+                    update(md, Double.doubleToRawLongBits(value), 8);
+                }
+                break;
+        }
+
+        return md.digest();
+    }
+
+
+    private static void update(MessageDigest md, long value, int size)
+    {
+        for (int shift = (size - 1) * 8; 0 <= shift; shift -= 8)
+        {
+            md.update((byte)(value >> shift));
+        }
+    }
+
+
+    @Benchmark
+    public byte[] perElement()
+    {
+        Digest digest = mDigest;
+
+        switch (type)
+        {
+            case "boolean":
+                for (boolean value : mBooleans)
+                {
+                    digest.update(value);
+                }
+                break;
+
+            case "char":
+                for (char value : mChars)
+                {
+                    digest.update(value);
+                }
+                break;
+
+            case "short":
+                for (short value : mShorts)
+                {
+                    digest.update(value);
+                }
+                break;
+
+            case "int":
+                for (int value : mInts)
+                {
+                    digest.update(value);
+                }
+                break;
+
+            case "long":
+                for (long value : mLongs)
+                {
+                    digest.update(value);
+                }
+                break;
+
+            case "float":
+                for (float value : mFloats)
+                {
+                    digest.update(value);
+                }
+                break;
+
+            default:
+                for (double value : mDoubles)
+                {
+                    digest.update(value);
+                }
+                break;
+        }
+
+        return digest.digest();
+    }
+
+
+    @Benchmark
+    public byte[] bulk()
+    {
+        Digest digest = mDigest;
+
+        switch (type)
+        {
+            case "boolean":
+                digest.update(mBooleans);
+                break;
+
+            case "char":
+                digest.update(mChars);
+                break;
+
+            case "short":
+                digest.update(mShorts);
+                break;
+
+            case "int":
+                digest.update(mInts);
+                break;
+
+            case "long":
+                digest.update(mLongs);
+                break;
+
+            case "float":
+                digest.update(mFloats);
+                break;
+
+            default:
+                digest.update(mDoubles);
+                break;
+        }
+
+        return digest.digest();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013-2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Throughput of creating {@link Digest} instances from many threads.
+ *
+ * <p>
+ * {@link #lookup()} is the way {@code Digest.getInstance(String)} worked
+ * before prototypes were cached: a provider lookup for every instance.
+ * {@link #cached()} and {@link #spec()} clone a cached prototype. Run
+ * with {@code -t} to change the number of threads.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class CreationBenchmark
+{
+    @Param({ "SHA-256", "MD5" })
+    public String algorithm;
+
+    private DigestSpec mSpec;
+
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException
+    {
+        mSpec = DigestSpec.getInstance(algorithm);
+    }
+
+
+    @Benchmark
+    public Digest lookup() throws NoSuchAlgorithmException
+    {
+        return new Digest(MessageDigest.getInstance(algorithm));
+    }
+
+
+    @Benchmark
+    public Digest cached() throws NoSuchAlgorithmException
+    {
+        return Digest.getInstance(algorithm);
+    }
+
+
+    @Benchmark
+    public Digest spec()
+    {
+        return mSpec.createDigest();
+    }
+}
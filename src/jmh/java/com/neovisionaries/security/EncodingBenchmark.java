@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2013-2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import org.apache.commons.codec.BinaryEncoder;
+import org.apache.commons.codec.EncoderException;
+import org.apache.commons.codec.binary.Base32;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Throughput of {@link DigestEncoding} compared with the {@code
+ * BinaryEncoder} path of Apache Commons Codec.
+ *
+ * <p>
+ * The {@code digestAs*} benchmarks compute a SHA-256 digest of a short
+ * string and encode it, as an ETag would be generated. The {@code
+ * encode*} benchmarks encode a fixed 32-byte value only.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EncodingBenchmark
+{
+    @Param({ "HEX", "BASE64", "BASE64URL", "BASE32" })
+    public DigestEncoding encoding;
+
+    private BinaryEncoder mEncoder;
+    private Digest mDigest;
+    private byte[] mInput;
+    private byte[] mValue;
+
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException
+    {
+        switch (encoding)
+        {
+            case HEX:
+                mEncoder = new Hex();
+                break;
+
+            case BASE64:
+                mEncoder = new Base64();
+                break;
+
+            case BASE64URL:
+                mEncoder = new Base64(0, null, true);
+                break;
+
+            default:
+                mEncoder = new Base32();
+                break;
+        }
+
+        mDigest = Digest.getInstance("SHA-256");
+        mInput  = "/api/v1/items/12345?fields=name,price".getBytes(StandardCharsets.UTF_8);
+        mValue  = mDigest.digest(mInput);
+    }
+
+
+    @Benchmark
+    public String digestAsStringBinaryEncoder()
+    {
+        return mDigest.digestAsString(mInput, mEncoder);
+    }
+
+
+    @Benchmark
+    public String digestAsStringDigestEncoding()
+    {
+        return mDigest.digestAsString(mInput, encoding);
+    }
+
+
+    @Benchmark
+    public String encodeBinaryEncoder() throws EncoderException
+    {
+        return new String(mEncoder.encode(mValue), StandardCharsets.UTF_8);
+    }
+
+
+    @Benchmark
+    public String encodeDigestEncoding()
+    {
+        return encoding.encode(mValue);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2013-2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+
+/**
+ * Scaling of JSON object traversal over object width and nesting depth.
+ *
+ * <p>
+ * The document is a chain of {@code depth} nested objects, each of
+ * which has {@code width} numeric fields and, except the innermost
+ * one, a {@code "child"} field holding the next object as its first
+ * field. {@link #findValue(Blackhole)} performs only the lookups which
+ * the traversal did before it iterated fields directly: {@code
+ * JsonNode.findValue} for each field name. {@link #updateJsonTree()}
+ * and {@link #updateJsonText()} are the current traversal with sorted
+ * keys.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonObjectBenchmark
+{
+    @Param({ "10", "100", "1000" })
+    public int width;
+
+    @Param({ "1", "4", "16" })
+    public int depth;
+
+    private JsonNode mTree;
+    private String mText;
+    private Digest mDigest;
+
+
+    @Setup
+    public void setup() throws IOException, NoSuchAlgorithmException
+    {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = mapper.createObjectNode();
+        ObjectNode node = root;
+
+        for (int level = 0; level < depth; ++level)
+        {
+            ObjectNode child = (level + 1 < depth) ? node.putObject("child") : null;
+
+            for (int i = 0; i < width; ++i)
+            {
+                node.put("k" + i, i);
+            }
+
+            node = child;
+        }
+
+        mTree   = root;
+        mText   = mapper.writeValueAsString(root);
+        mDigest = Digest.getInstance("SHA-256");
+    }
+
+
+    @Benchmark
+    public void findValue(Blackhole blackhole)
+    {
+        findValue(mTree, blackhole);
+    }
+
+
+    private static void findValue(JsonNode node, Blackhole blackhole)
+    {
+        Iterator<String> names = node.fieldNames();
+
+        while (names.hasNext())
+        {
+            JsonNode value = node.findValue(names.next());
+
+            blackhole.consume(value);
+
+            if (value.isObject())
+            {
+                findValue(value, blackhole);
+            }
+        }
+    }
+
+
+    @Benchmark
+    public byte[] updateJsonTree() throws IOException
+    {
+        return mDigest.updateJson(mTree).digest();
+    }
+
+
+    @Benchmark
+    public byte[] updateJsonText() throws IOException
+    {
+        return mDigest.updateJson(mText).digest();
+    }
+}
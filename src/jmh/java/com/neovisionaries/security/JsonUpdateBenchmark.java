@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2013-2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+
+/**
+ * Throughput of {@code updateJson} with a small document.
+ *
+ * <p>
+ * {@link #newMapper()} does what {@link Digest#updateJson(String)} did
+ * before the mapper was shared: it builds an {@code ObjectMapper} with
+ * {@code USE_BIG_DECIMAL_FOR_FLOATS} for every call and digests the
+ * tree read by it. {@link #sharedMapper()} does the same with a mapper
+ * created once, and {@link #updateJson()} is the current method, which
+ * uses the shared mapper and an updater reused by the thread.
+ * {@link #freshUpdater()} uses a new updater as virtual threads and
+ * nested calls do.
+ * </p>
+ *
+ * <p>
+ * {@code jsonMaxDepth} other than the default makes the updaters use
+ * a mapper for the custom depth.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonUpdateBenchmark
+{
+    private static final String JSON =
+            "{\"id\":12345,\"name\":\"nv-digest\",\"price\":19.99,\"active\":true," +
+            "\"tags\":[\"security\",\"digest\",\"json\"],\"owner\":{\"id\":1,\"email\":null}}";
+
+
+    @Param({ "1000", "64" })
+    public int jsonMaxDepth;
+
+    private Digest mDigest;
+    private ObjectMapper mMapper;
+
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException
+    {
+        mDigest = Digest.getInstance("SHA-256").setJsonMaxDepth(jsonMaxDepth);
+        mMapper = createObjectMapper();
+    }
+
+
+    private static ObjectMapper createObjectMapper()
+    {
+        ObjectMapper mapper = new ObjectMapper();
+
+        mapper.configure(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS, true);
+
+        return mapper;
+    }
+
+
+    @Benchmark
+    public byte[] newMapper() throws IOException
+    {
+        return mDigest.updateJson(createObjectMapper().readTree(JSON)).digest();
+    }
+
+
+    @Benchmark
+    public byte[] sharedMapper() throws IOException
+    {
+        return mDigest.updateJson(mMapper.readTree(JSON)).digest();
+    }
+
+
+    @Benchmark
+    public byte[] updateJson() throws IOException
+    {
+        return mDigest.updateJson(JSON).digest();
+    }
+
+
+    @Benchmark
+    public byte[] freshUpdater() throws IOException
+    {
+        return new JsonDigestUpdater().update(mDigest, JSON).digest();
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
+
+
+/**
+ * Implementation of {@link Digest#digestAsync(Path, Executor, LongConsumer)}.
+ *
+ * <p>
+ * Two buffers are used alternately. While the executor hashes the
+ * chunk in one buffer, the next chunk is read into the other. The
+ * next step starts when both the read and the hashing have finished,
+ * so the {@link Digest} is never accessed by two threads at a time.
+ * </p>
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+final class AsyncFileDigester
+{
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+
+    /**
+     * A pair of a read and hashing that run concurrently.
+     */
+    private final class Step implements CompletionHandler<Integer, Void>, Runnable
+    {
+        private final AtomicInteger mPending = new AtomicInteger(2);
+        private final int mIndex;
+        private final ByteBuffer mChunk;
+        private int mCount;
+
+
+        /**
+         * @param index
+         *         The index of the buffer into which the next chunk is read.
+         *
+         * @param chunk
+         *         The chunk to hash.
+         */
+        Step(int index, ByteBuffer chunk)
+        {
+            mIndex = index;
+            mChunk = chunk;
+        }
+
+
+        void start()
+        {
+            ByteBuffer buffer = mBuffers[mIndex];
+            buffer.clear();
+
+            try
+            {
+                mChannel.read(buffer, mPosition, null, this);
+                mExecutor.execute(this);
+            }
+            catch (RuntimeException e)
+            {
+                fail(e);
+            }
+        }
+
+
+        /**
+         * Hash the chunk. Called by the executor.
+         */
+        @Override
+        public void run()
+        {
+            if (mFuture.isDone())
+            {
+                // Cancelled or failed.
+                return;
+            }
+
+            try
+            {
+                mDigest.update(mChunk);
+
+                if (mProgress != null)
+                {
+                    mProgress.accept(mPosition);
+                }
+            }
+            catch (Throwable t)
+            {
+                fail(t);
+                return;
+            }
+
+            arrive();
+        }
+
+
+        /**
+         * The next chunk has been read. Called by the channel.
+         */
+        @Override
+        public void completed(Integer result, Void attachment)
+        {
+            mCount = result;
+
+            arrive();
+        }
+
+
+        @Override
+        public void failed(Throwable exc, Void attachment)
+        {
+            fail(exc);
+        }
+
+
+        private void arrive()
+        {
+            if (mPending.decrementAndGet() == 0)
+            {
+                onRead(mIndex, mCount);
+            }
+        }
+    }
+
+
+    private final Digest mDigest;
+    private final AsynchronousFileChannel mChannel;
+    private final Executor mExecutor;
+    private final LongConsumer mProgress;
+    private final CompletableFuture<byte[]> mFuture;
+    private final ByteBuffer[] mBuffers;
+    private long mPosition;
+
+
+    private AsyncFileDigester(
+            Digest digest, AsynchronousFileChannel channel, Executor executor, LongConsumer progress)
+    {
+        mDigest   = digest;
+        mChannel  = channel;
+        mExecutor = executor;
+        mProgress = progress;
+        mFuture   = new CompletableFuture<byte[]>();
+        mBuffers  = new ByteBuffer[] {
+            ByteBuffer.allocateDirect(CHUNK_SIZE), ByteBuffer.allocateDirect(CHUNK_SIZE)
+        };
+    }
+
+
+    /**
+     * Start digesting the file.
+     */
+    static CompletableFuture<byte[]> start(
+            Digest digest, Path input, Executor executor, LongConsumer progress)
+    {
+        AsynchronousFileChannel channel;
+
+        try
+        {
+            channel = AsynchronousFileChannel.open(input, StandardOpenOption.READ);
+        }
+        catch (IOException e)
+        {
+            CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+            future.completeExceptionally(e);
+
+            return future;
+        }
+
+        final AsyncFileDigester digester = new AsyncFileDigester(digest, channel, executor, progress);
+
+        // Release the file however the future is completed, including cancellation.
+        digester.mFuture.whenComplete(new BiConsumer<byte[], Throwable>() {
+            @Override
+            public void accept(byte[] result, Throwable cause)
+            {
+                digester.close();
+            }
+        });
+
+        digester.readFirst();
+
+        return digester.mFuture;
+    }
+
+
+    private void readFirst()
+    {
+        CompletionHandler<Integer, Void> handler = new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer result, Void attachment)
+            {
+                onRead(0, result);
+            }
+
+            @Override
+            public void failed(Throwable exc, Void attachment)
+            {
+                fail(exc);
+            }
+        };
+
+        try
+        {
+            mChannel.read(mBuffers[0], 0, null, handler);
+        }
+        catch (RuntimeException e)
+        {
+            fail(e);
+        }
+    }
+
+
+    /**
+     * A chunk has been read into the specified buffer and all the
+     * previous chunks have been hashed.
+     */
+    private void onRead(int index, int count)
+    {
+        if (mFuture.isDone())
+        {
+            return;
+        }
+
+        if (count < 0)
+        {
+            // The end of the file.
+            try
+            {
+                mFuture.complete(mDigest.digest());
+            }
+            catch (Throwable t)
+            {
+                fail(t);
+            }
+
+            return;
+        }
+
+        ByteBuffer chunk = mBuffers[index];
+        chunk.flip();
+
+        mPosition += count;
+
+        new Step(1 - index, chunk).start();
+    }
+
+
+    private void fail(Throwable cause)
+    {
+        mFuture.completeExceptionally(cause);
+    }
+
+
+    private void close()
+    {
+        try
+        {
+            mChannel.close();
+        }
+        catch (IOException e)
+        {
+            // Ignore.
+        }
+    }
+}
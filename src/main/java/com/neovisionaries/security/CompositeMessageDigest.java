@@ -0,0 +1,553 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.security.MessageDigest;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * {@link MessageDigest} which passes input data to multiple
+ * {@code MessageDigest} instances. Used by {@link MultiDigest}.
+ *
+ * <p>
+ * In the serial mode, input data is given to the instances one after
+ * another on the calling thread. In the parallel mode, input data is
+ * copied into a ring of chunks, and each instance consumes the chunks
+ * in order on the executor. A chunk is reused after all the instances
+ * have consumed it, so the data is copied only once regardless of the
+ * number of algorithms.
+ * </p>
+ *
+ * <p>
+ * If the executor rejects a lane or a wrapped instance throws, the
+ * lane records the failure and releases its chunks. The failure is
+ * reported as an {@code IllegalStateException} when the digests are
+ * computed or the instance is cloned, and it is cleared by reset.
+ * </p>
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+final class CompositeMessageDigest extends MessageDigest implements Cloneable
+{
+    private static final int CHUNK_SIZE  = 64 * 1024;
+    private static final int CHUNK_COUNT = 4;
+
+
+    /**
+     * A chunk of input data shared by the lanes.
+     */
+    private static final class Chunk
+    {
+        final byte[] mData = new byte[CHUNK_SIZE];
+        final Semaphore mAvailable = new Semaphore(1);
+        final AtomicInteger mPending = new AtomicInteger();
+        int mLength;
+
+
+        void consumed()
+        {
+            if (mPending.decrementAndGet() == 0)
+            {
+                mLength = 0;
+                mAvailable.release();
+            }
+        }
+    }
+
+
+    /**
+     * A serial queue of chunks for one {@code MessageDigest} instance.
+     */
+    private static final class Lane implements Runnable
+    {
+        private final MessageDigest mMessageDigest;
+        private final Executor mExecutor;
+        private final ConcurrentLinkedQueue<Chunk> mQueue = new ConcurrentLinkedQueue<Chunk>();
+        private final AtomicBoolean mScheduled = new AtomicBoolean();
+        private volatile Throwable mFailure;
+
+
+        Lane(MessageDigest messageDigest, Executor executor)
+        {
+            mMessageDigest = messageDigest;
+            mExecutor      = executor;
+        }
+
+
+        void enqueue(Chunk chunk)
+        {
+            if (mFailure != null)
+            {
+                // The state of the instance is broken. Skip the data.
+                chunk.consumed();
+                return;
+            }
+
+            mQueue.offer(chunk);
+
+            if (mScheduled.compareAndSet(false, true) == false)
+            {
+                return;
+            }
+
+            try
+            {
+                mExecutor.execute(this);
+            }
+            catch (RuntimeException e)
+            {
+                // No task will consume the queued chunks. Release them
+                // so that awaitLanes() does not wait for them forever.
+                mFailure = e;
+                drain();
+                mScheduled.set(false);
+
+                throw e;
+            }
+        }
+
+
+        private void drain()
+        {
+            Chunk chunk;
+
+            while ((chunk = mQueue.poll()) != null)
+            {
+                chunk.consumed();
+            }
+        }
+
+
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                Chunk chunk;
+
+                while ((chunk = mQueue.poll()) != null)
+                {
+                    try
+                    {
+                        if (mFailure == null)
+                        {
+                            mMessageDigest.update(chunk.mData, 0, chunk.mLength);
+                        }
+                    }
+                    catch (Throwable t)
+                    {
+                        // Reported by awaitLanes().
+                        mFailure = t;
+                    }
+                    finally
+                    {
+                        chunk.consumed();
+                    }
+                }
+
+                mScheduled.set(false);
+
+                // A chunk may have been enqueued after the last poll().
+                if (mQueue.isEmpty() || mScheduled.compareAndSet(false, true) == false)
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+
+    private MessageDigest[] mMessageDigests;
+    private final Executor mExecutor;
+    private Lane[] mLanes;
+    private Chunk[] mChunks;
+    private int mCurrent;
+    private int mLastDispatched;
+
+
+    CompositeMessageDigest(MessageDigest[] messageDigests, Executor executor)
+    {
+        super(buildAlgorithm(messageDigests));
+
+        mMessageDigests = messageDigests;
+        mExecutor       = executor;
+
+        if (executor != null)
+        {
+            setUpLanes();
+        }
+    }
+
+
+    private static String buildAlgorithm(MessageDigest[] messageDigests)
+    {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < messageDigests.length; ++i)
+        {
+            if (i != 0)
+            {
+                builder.append('+');
+            }
+
+            builder.append(messageDigests[i].getAlgorithm());
+        }
+
+        return builder.toString();
+    }
+
+
+    private void setUpLanes()
+    {
+        mLanes = new Lane[mMessageDigests.length];
+
+        for (int i = 0; i < mLanes.length; ++i)
+        {
+            mLanes[i] = new Lane(mMessageDigests[i], mExecutor);
+        }
+
+        mChunks = new Chunk[CHUNK_COUNT];
+
+        for (int i = 0; i < mChunks.length; ++i)
+        {
+            mChunks[i] = new Chunk();
+        }
+
+        mCurrent        = -1;
+        mLastDispatched = -1;
+    }
+
+
+    /**
+     * Get the number of wrapped instances.
+     */
+    int size()
+    {
+        return mMessageDigests.length;
+    }
+
+
+    /**
+     * Get the algorithm of the wrapped instance at the index.
+     */
+    String getAlgorithm(int index)
+    {
+        return mMessageDigests[index].getAlgorithm();
+    }
+
+
+    /**
+     * Complete the hash computation of each wrapped instance.
+     */
+    byte[][] digests()
+    {
+        awaitLanes();
+
+        byte[][] digests = new byte[mMessageDigests.length][];
+
+        for (int i = 0; i < digests.length; ++i)
+        {
+            digests[i] = mMessageDigests[i].digest();
+        }
+
+        return digests;
+    }
+
+
+    @Override
+    protected void engineUpdate(byte input)
+    {
+        if (mLanes == null)
+        {
+            for (MessageDigest md : mMessageDigests)
+            {
+                md.update(input);
+            }
+
+            return;
+        }
+
+        Chunk chunk = currentChunk();
+
+        chunk.mData[chunk.mLength++] = input;
+
+        if (chunk.mLength == CHUNK_SIZE)
+        {
+            dispatch();
+        }
+    }
+
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len)
+    {
+        if (mLanes == null)
+        {
+            for (MessageDigest md : mMessageDigests)
+            {
+                md.update(input, offset, len);
+            }
+
+            return;
+        }
+
+        while (len > 0)
+        {
+            Chunk chunk = currentChunk();
+            int size = Math.min(len, CHUNK_SIZE - chunk.mLength);
+
+            System.arraycopy(input, offset, chunk.mData, chunk.mLength, size);
+            chunk.mLength += size;
+            offset += size;
+            len    -= size;
+
+            if (chunk.mLength == CHUNK_SIZE)
+            {
+                dispatch();
+            }
+        }
+    }
+
+
+    @Override
+    protected byte[] engineDigest()
+    {
+        byte[][] digests = digests();
+        int total = 0;
+
+        for (byte[] digest : digests)
+        {
+            total += digest.length;
+        }
+
+        byte[] result = new byte[total];
+        int position  = 0;
+
+        for (byte[] digest : digests)
+        {
+            System.arraycopy(digest, 0, result, position, digest.length);
+            position += digest.length;
+        }
+
+        return result;
+    }
+
+
+    @Override
+    protected int engineGetDigestLength()
+    {
+        int total = 0;
+
+        for (MessageDigest md : mMessageDigests)
+        {
+            int length = md.getDigestLength();
+
+            if (length == 0)
+            {
+                // Unknown
+                return 0;
+            }
+
+            total += length;
+        }
+
+        return total;
+    }
+
+
+    @Override
+    protected void engineReset()
+    {
+        if (mLanes != null && mCurrent >= 0)
+        {
+            // Discard the chunk being filled.
+            mChunks[mCurrent].mLength = 0;
+        }
+
+        // A failure does not matter because the state is discarded.
+        waitForLanes();
+
+        if (mLanes != null)
+        {
+            for (Lane lane : mLanes)
+            {
+                lane.mFailure = null;
+            }
+        }
+
+        for (MessageDigest md : mMessageDigests)
+        {
+            md.reset();
+        }
+    }
+
+
+    @Override
+    public Object clone() throws CloneNotSupportedException
+    {
+        awaitLanes();
+
+        CompositeMessageDigest cloned = (CompositeMessageDigest)super.clone();
+
+        cloned.mMessageDigests = new MessageDigest[mMessageDigests.length];
+
+        for (int i = 0; i < mMessageDigests.length; ++i)
+        {
+            cloned.mMessageDigests[i] = (MessageDigest)mMessageDigests[i].clone();
+        }
+
+        if (mExecutor != null)
+        {
+            cloned.setUpLanes();
+        }
+
+        return cloned;
+    }
+
+
+    /**
+     * Get the chunk being filled. If there is none, wait for the next
+     * chunk in the ring to become available.
+     */
+    private Chunk currentChunk()
+    {
+        if (mCurrent >= 0)
+        {
+            return mChunks[mCurrent];
+        }
+
+        int next = (mLastDispatched + 1) % CHUNK_COUNT;
+
+        mChunks[next].mAvailable.acquireUninterruptibly();
+        mCurrent = next;
+
+        return mChunks[next];
+    }
+
+
+    /**
+     * Hand the chunk being filled to all the lanes.
+     */
+    private void dispatch()
+    {
+        Chunk chunk = mChunks[mCurrent];
+
+        mLastDispatched = mCurrent;
+        mCurrent = -1;
+
+        if (chunk.mLength == 0)
+        {
+            chunk.mAvailable.release();
+            return;
+        }
+
+        chunk.mPending.set(mLanes.length);
+
+        RuntimeException failure = null;
+
+        // Hand the chunk to all the lanes even if one of them fails,
+        // so that the chunk is released.
+        for (Lane lane : mLanes)
+        {
+            try
+            {
+                lane.enqueue(chunk);
+            }
+            catch (RuntimeException e)
+            {
+                if (failure == null)
+                {
+                    failure = e;
+                }
+            }
+        }
+
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+
+    /**
+     * Dispatch the chunk being filled and wait until all the lanes
+     * have consumed all the chunks.
+     *
+     * @throws IllegalStateException
+     *         A wrapped instance failed to process the data, or the
+     *         executor rejected a task.
+     */
+    private void awaitLanes()
+    {
+        Throwable failure = waitForLanes();
+
+        if (failure != null)
+        {
+            throw new IllegalStateException("Failed to process the input data in parallel.", failure);
+        }
+    }
+
+
+    /**
+     * Dispatch the chunk being filled, wait until all the lanes have
+     * consumed all the chunks, and return the first failure of the
+     * lanes, if any.
+     */
+    private Throwable waitForLanes()
+    {
+        if (mLanes == null)
+        {
+            return null;
+        }
+
+        if (mCurrent >= 0)
+        {
+            try
+            {
+                dispatch();
+            }
+            catch (RuntimeException e)
+            {
+                // The lane which failed to schedule itself keeps the
+                // exception, and it is returned below.
+            }
+        }
+
+        for (Chunk chunk : mChunks)
+        {
+            chunk.mAvailable.acquireUninterruptibly();
+            chunk.mAvailable.release();
+        }
+
+        for (Lane lane : mLanes)
+        {
+            if (lane.mFailure != null)
+            {
+                return lane.mFailure;
+            }
+        }
+
+        return null;
+    }
+}
@@ -17,20 +17,37 @@ package com.neovisionaries.security;
 
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.Provider;
-import java.util.HashMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 import org.apache.commons.codec.BinaryEncoder;
 import org.apache.commons.codec.EncoderException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
 
 
 /**
@@ -254,10 +271,59 @@ public class Digest implements Cloneable
 
 
     /**
-     * Characters used to generate a hex string.
+     * Size of the staging buffer.
      */
-    private static final char[] mHexArray = {
-        '0','1','2','3','4','5','6','7','8','9','a','b','c','d','e','f' };
+    private static final int BUFFER_SIZE = 512;
+
+
+    /**
+     * The default size of windows in which {@link #update(FileChannel,
+     * long, long)} maps a file into memory.
+     *
+     * @since 1.7
+     */
+    public static final int DEFAULT_MAPPING_WINDOW_SIZE = 64 * 1024 * 1024;
+
+
+    /**
+     * Ranges of files smaller than this size are read instead of
+     * being mapped because mapping has a fixed cost.
+     */
+    private static final int MAPPING_THRESHOLD = 256 * 1024;
+
+
+    /**
+     * Size of the direct buffer used to read files.
+     */
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+
+    /**
+     * The initial size of the buffer used to read streams.
+     */
+    private static final int STREAM_BUFFER_INITIAL_SIZE = 8 * 1024;
+
+
+    /**
+     * The maximum size of the buffer used to read streams.
+     */
+    private static final int STREAM_BUFFER_MAX_SIZE = 1024 * 1024;
+
+
+    /**
+     * Features enabled by default.
+     */
+    static final int DEFAULT_FEATURES = mask(Feature.SORT_JSON_OBJECT_ENTRY_KEYS);
+
+
+    /**
+     * The default value of the maximum nesting depth of JSON arrays
+     * and objects accepted by {@link #updateJson(String)}, which is
+     * the same as the default of Jackson.
+     *
+     * @since 1.7
+     */
+    public static final int DEFAULT_JSON_MAX_DEPTH = 1000;
 
 
     /**
@@ -267,9 +333,44 @@ public class Digest implements Cloneable
 
 
     /**
-     * Features (configuration).
+     * Features (configuration). Each bit indicates whether the
+     * feature whose ordinal is the bit position is enabled.
+     */
+    private int mFeatures;
+
+
+    /**
+     * The maximum nesting depth of JSON arrays and objects.
+     */
+    private int mJsonMaxDepth;
+
+
+    /**
+     * Staging buffer. Small pieces of input data such as {@code int}
+     * values are accumulated in this buffer and then passed to the
+     * wrapped {@code MessageDigest} in bulk.
+     */
+    private byte[] mBuffer;
+
+
+    /**
+     * The number of bytes accumulated in the staging buffer.
+     */
+    private int mBufferPosition;
+
+
+    /**
+     * Direct buffer used to read files that are not mapped. Allocated
+     * on demand and not shared with clones.
+     */
+    private ByteBuffer mFileBuffer;
+
+
+    /**
+     * Buffer used to read streams. Allocated on demand, grown while
+     * sources fill it up, and not shared with clones.
      */
-    private HashMap<Feature, Boolean> mFeatures;
+    private byte[] mStreamBuffer;
 
 
     /**
@@ -290,26 +391,29 @@ public class Digest implements Cloneable
         }
 
         mMessageDigest = messageDigest;
-        mFeatures = createFeatureMap();
+        mFeatures = DEFAULT_FEATURES;
+        mJsonMaxDepth = DEFAULT_JSON_MAX_DEPTH;
+        mBuffer = new byte[BUFFER_SIZE];
     }
 
 
     /**
-     * Create a feature map with default values.
+     * Constructor with a {@link MessageDigest} instance and features.
      */
-    private HashMap<Feature, Boolean> createFeatureMap()
+    Digest(MessageDigest messageDigest, int features)
     {
-        HashMap<Feature, Boolean> map = new HashMap<Feature, Boolean>();
+        this(messageDigest);
+
+        mFeatures = features;
+    }
 
-        map.put(Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL,         Boolean.FALSE);
-        map.put(Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_FALSE,        Boolean.FALSE);
-        map.put(Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_ZERO,         Boolean.FALSE);
-        map.put(Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_STRING, Boolean.FALSE);
-        map.put(Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_ARRAY,  Boolean.FALSE);
-        map.put(Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_OBJECT, Boolean.FALSE);
-        map.put(Feature.SORT_JSON_OBJECT_ENTRY_KEYS, Boolean.TRUE);
 
-        return map;
+    /**
+     * Get the bit which represents the specified feature.
+     */
+    static int mask(Feature feature)
+    {
+        return 1 << feature.ordinal();
     }
 
 
@@ -319,7 +423,12 @@ public class Digest implements Cloneable
      * <p>
      * This constructor is equivalent to {@link #Digest(MessageDigest) this}{@code
      * (}{@link MessageDigest#getInstance(String) MessageDigest.getInstance}{@code
-     * (algorithm))}.
+     * (algorithm))} except that the result of the provider lookup is cached.
+     * Since the version 1.7, the provider is looked up only once per
+     * algorithm, and {@code MessageDigest} instances are created by cloning
+     * a prototype if the implementation supports cloning. Therefore, changes
+     * made to the security provider list after the first lookup are not
+     * reflected.
      * </p>
      *
      * @param algorithm
@@ -332,7 +441,7 @@ public class Digest implements Cloneable
      */
     public Digest(String algorithm) throws NoSuchAlgorithmException
     {
-        this(MessageDigest.getInstance(algorithm));
+        this(MessageDigestFactory.create(algorithm));
     }
 
 
@@ -342,7 +451,8 @@ public class Digest implements Cloneable
      * <p>
      * This constructor is equivalent to {@link #Digest(MessageDigest) this}{@code
      * (}{@link MessageDigest#getInstance(String,String) MessageDigest.getInstance}{@code
-     * (algorithm, provider))}.
+     * (algorithm, provider))} except that the result of the provider lookup
+     * is cached in the same way as {@link #Digest(String)}.
      * </p>
      *
      * @param algorithm
@@ -361,7 +471,7 @@ public class Digest implements Cloneable
      */
     public Digest(String algorithm, String provider) throws NoSuchAlgorithmException, NoSuchProviderException
     {
-        this(MessageDigest.getInstance(algorithm, provider));
+        this(MessageDigestFactory.create(algorithm, provider));
     }
 
 
@@ -371,7 +481,10 @@ public class Digest implements Cloneable
      * <p>
      * This constructor is equivalent to {@link #Digest(MessageDigest) this}{@code
      * (}{@link MessageDigest#getInstance(String,Provider) MessageDigest.getInstance}{@code
-     * (algorithm, provider))}.
+     * (algorithm, provider))}, which is called every time. {@code Provider}
+     * instances are not cached; only the overloads which take an algorithm
+     * name and an optional provider name use the cache described in {@link
+     * #Digest(String)}.
      * </p>
      *
      * @param algorithm
@@ -387,7 +500,7 @@ public class Digest implements Cloneable
      */
     public Digest(String algorithm, Provider provider) throws NoSuchAlgorithmException
     {
-        this(MessageDigest.getInstance(algorithm, provider));
+        this(MessageDigestFactory.create(algorithm, provider));
     }
 
 
@@ -397,7 +510,8 @@ public class Digest implements Cloneable
      * <p>
      * This method creates a {@link MessageDigest} instance by
      * {@link MessageDigest#getInstance(String)} and wraps it
-     * in a {@code Digest} instance.
+     * in a {@code Digest} instance. The result of the provider lookup
+     * is cached. See {@link #Digest(String)} for details.
      * </p>
      *
      * @param algorithm
@@ -421,7 +535,8 @@ public class Digest implements Cloneable
      * <p>
      * This method creates a {@link MessageDigest} instance by
      * {@link MessageDigest#getInstance(String, String)} and wraps it
-     * in a {@code Digest} instance.
+     * in a {@code Digest} instance. The result of the provider lookup
+     * is cached. See {@link #Digest(String)} for details.
      * </p>
      *
      * @param algorithm
@@ -452,7 +567,9 @@ public class Digest implements Cloneable
      * <p>
      * This method creates a {@link MessageDigest} instance by
      * {@link MessageDigest#getInstance(String, Provider)} and wraps it
-     * in a {@code Digest} instance.
+     * in a {@code Digest} instance. The method is called every time,
+     * and the result is not cached. See {@link #Digest(String, Provider)}
+     * for details.
      * </p>
      *
      * @param algorithm
@@ -632,6 +749,10 @@ public class Digest implements Cloneable
      */
     public MessageDigest getWrappedMessageDigest()
     {
+        // Make the wrapped instance reflect all the input data
+        // given so far before the caller touches it directly.
+        flush();
+
         return mMessageDigest;
     }
 
@@ -645,14 +766,17 @@ public class Digest implements Cloneable
      * @throws CloneNotSupportedException
      *         The implementation does not support {@code clone} operation.
      */
-    @SuppressWarnings("unchecked")
     @Override
     public Object clone() throws CloneNotSupportedException
     {
+        flush();
+
         Digest cloned = (Digest)super.clone();
 
         cloned.mMessageDigest = (MessageDigest)mMessageDigest.clone();
-        cloned.mFeatures      = (HashMap<Feature, Boolean>)mFeatures.clone();
+        cloned.mBuffer        = new byte[BUFFER_SIZE];
+        cloned.mFileBuffer    = null;
+        cloned.mStreamBuffer  = null;
 
         return cloned;
     }
@@ -672,6 +796,8 @@ public class Digest implements Cloneable
      */
     public byte[] digest()
     {
+        flush();
+
         return mMessageDigest.digest();
     }
 
@@ -695,6 +821,8 @@ public class Digest implements Cloneable
      */
     public byte[] digest(byte[] input)
     {
+        flush();
+
         return mMessageDigest.digest(input);
     }
 
@@ -727,6 +855,8 @@ public class Digest implements Cloneable
      */
     public int digest(byte[] output, int offset, int length) throws DigestException
     {
+        flush();
+
         return mMessageDigest.digest(output, offset, length);
     }
 
@@ -736,8 +866,8 @@ public class Digest implements Cloneable
      * as a hex string. The digest is reset after this call is made.
      *
      * <p>
-     * This method calls {@link #digest()} method and converts the result
-     * to a String object.
+     * This method computes the hash value in the same way as {@link
+     * #digest()} method and converts the result to a String object.
      * </p>
      *
      * @return
@@ -745,7 +875,7 @@ public class Digest implements Cloneable
      */
     public String digestAsString()
     {
-        return bytesToHex(digest());
+        return digestAsString(DigestEncoding.HEX);
     }
 
 
@@ -868,634 +998,747 @@ public class Digest implements Cloneable
 
 
     /**
-     * Reset the wrapped {@code MessageDigest} instance.
-     *
-     * @return
-     *         {@code this} object.
-     */
-    public Digest reset()
-    {
-        mMessageDigest.reset();
-
-        return this;
-    }
-
-
-    /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Complete the hash computation and get the resulting hash value
+     * as a string in the specified encoding.
      *
      * <p>
-     * This method calls {@link MessageDigest#update(byte) update(byte)}
-     * method of the wrapped {@code MessageDigest} instance.
+     * This method is an alias of {@link #digestAsString(byte[],
+     * DigestEncoding) digestAsString((byte[])null, encoding)}.
      * </p>
      *
-     * @param input
-     *         Input data.
+     * @param encoding
+     *         Encoding of the hash value.
      *
      * @return
-     *         {@code this} object.
+     *         The result hash value encoded in the specified encoding.
+     *
+     * @throws IllegalArgumentException
+     *         {@code encoding} is {@code null}.
+     *
+     * @since 1.7
      */
-    public Digest update(byte input)
+    public String digestAsString(DigestEncoding encoding)
     {
-        mMessageDigest.update(input);
-
-        return this;
+        return digestAsString((byte[])null, encoding);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Perform the final update with the given byte array, and then
+     * complete the hash computation and get the resulting hash value
+     * as a string in the specified encoding. The digest is reset after
+     * this call is made.
      *
      * <p>
-     * This method calls {@link MessageDigest#update(byte[]) update(byte[])}
-     * method of the wrapped {@code MessageDigest} instance.
+     * Characters are generated directly from the hash value without
+     * creating intermediate arrays, so this method is lighter than
+     * {@link #digestAsString(byte[], BinaryEncoder)}.
      * </p>
      *
      * @param input
-     *         Input data.
+     *         Byte array used for the last update. If {@code null}
+     *         is given, it is just ignored.
+     *
+     * @param encoding
+     *         Encoding of the hash value.
      *
      * @return
-     *         {@code this} object.
+     *         The result hash value encoded in the specified encoding.
+     *
+     * @throws IllegalArgumentException
+     *         {@code encoding} is {@code null}.
+     *
+     * @since 1.7
      */
-    public Digest update(byte[] input)
+    public String digestAsString(byte[] input, DigestEncoding encoding)
     {
-        mMessageDigest.update(input);
+        if (encoding == null)
+        {
+            throw new IllegalArgumentException("encoding is null.");
+        }
 
-        return this;
+        if (input != null)
+        {
+            update(input);
+        }
+
+        if (fitsInBuffer() == false)
+        {
+            return encoding.encode(digest());
+        }
+
+        int length = digestToBuffer();
+
+        return encoding.encode(mBuffer, 0, length);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Complete the hash computation and write the resulting hash
+     * value into the given buffer. The digest is reset after this
+     * call is made.
      *
      * <p>
-     * This method calls {@link MessageDigest#update(byte[],int,int)
-     * update(byte[], int, int)} method of the wrapped
-     * {@code MessageDigest} instance.
+     * The hash value is written at the current position of the
+     * buffer and the position is advanced by the length of the
+     * hash value. No array is allocated by this method.
      * </p>
      *
-     * @param input
-     *         Input data.
+     * @param output
+     *         Output buffer for the computed digest.
      *
-     * @param offset
-     *         The offset to start from in the array.
+     * @return
+     *         The number of bytes written into the buffer.
      *
-     * @param length
-     *         The number of elements to use, starting at offset.
+     * @throws IllegalArgumentException
+     *         {@code output} is {@code null}, or its remaining space
+     *         is less than {@link #getDigestLength()}.
      *
-     * @return
-     *         {@code this} object.
+     * @since 1.7
      */
-    public Digest update(byte[] input, int offset, int length)
+    public int digestTo(ByteBuffer output)
     {
-        mMessageDigest.update(input, offset, length);
+        if (output == null)
+        {
+            throw new IllegalArgumentException("output is null.");
+        }
 
-        return this;
+        if (output.remaining() < getDigestLength())
+        {
+            throw new IllegalArgumentException("The remaining space of the output buffer is too small.");
+        }
+
+        if (fitsInBuffer() == false)
+        {
+            byte[] digest = digest();
+
+            output.put(digest);
+
+            return digest.length;
+        }
+
+        int length = digestToBuffer();
+
+        output.put(mBuffer, 0, length);
+
+        return length;
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Complete the hash computation and write the resulting hash
+     * value into the given array. The digest is reset after this
+     * call is made.
      *
      * <p>
-     * This method calls {@link MessageDigest#update(ByteBuffer)
-     * update(ByteBuffer)} method of the wrapped {@code MessageDigest}
-     * instance.
+     * Unlike {@link #digest(byte[], int, int)}, this method does not
+     * throw a checked exception.
      * </p>
      *
-     * @param input
-     *         Input data.
+     * @param output
+     *         Output buffer for the computed digest.
+     *
+     * @param offset
+     *         Offset into the output buffer to begin storing the digest.
      *
      * @return
-     *         {@code this} object.
+     *         The number of bytes written into the array.
+     *
+     * @throws IllegalArgumentException
+     *         {@code output} is {@code null}, {@code offset} is negative,
+     *         or the space after {@code offset} is less than {@link
+     *         #getDigestLength()}.
+     *
+     * @since 1.7
      */
-    public Digest update(ByteBuffer input)
+    public int digestTo(byte[] output, int offset)
     {
-        mMessageDigest.update(input);
+        if (output == null)
+        {
+            throw new IllegalArgumentException("output is null.");
+        }
 
-        return this;
+        if (offset < 0 || output.length - offset < getDigestLength())
+        {
+            throw new IllegalArgumentException("The space of the output array after the offset is too small.");
+        }
+
+        flush();
+
+        try
+        {
+            return mMessageDigest.digest(output, offset, output.length - offset);
+        }
+        catch (DigestException e)
+        {
+            throw new IllegalStateException("Failed to compute the digest value.", e);
+        }
     }
 
 
     /**
-     * Check the validity of the combination of the given parameters.
+     * Complete the hash computation and write the resulting hash
+     * value into the given array as a hex string. The digest is
+     * reset after this call is made.
      *
-     * @param size
-     *         Size of an array.
+     * @param output
+     *         Output buffer for the hex string. Two characters are
+     *         written per byte of the hash value.
      *
      * @param offset
-     *         Offset in the array.
+     *         Offset into the output buffer to begin storing the hex string.
      *
-     * @param length
-     *         Length of data to use.
+     * @return
+     *         The number of characters written into the array.
      *
      * @throws IllegalArgumentException
-     * <ul>
-     * <li>{@code offset < 0}
-     * <li>{@code size <= offset}
-     * <li>{@code length < 0}
-     * <li>{@code size < (offset + length)}
-     * </ul>
+     *         {@code output} is {@code null}, {@code offset} is negative,
+     *         or the space after {@code offset} is less than twice
+     *         {@link #getDigestLength()}.
+     *
+     * @since 1.7
      */
-    private void checkRange(int size, int offset, int length)
+    public int digestAsHex(char[] output, int offset)
     {
-        String message = null;
-
-        if (offset < 0)
-        {
-            message = "The offset is less than 0.";
-        }
-        else if (size <= offset)
-        {
-            message = "The offset is equal to or greater than the size.";
-        }
-        else if (length < 0)
+        if (output == null)
         {
-            message = "The length is less than 0.";
+            throw new IllegalArgumentException("output is null.");
         }
-        else if (size < (offset + length))
+
+        if (offset < 0 || output.length - offset < getDigestLength() * 2)
         {
-            message = "The sum of the offset and the length is greater than the size.";
+            throw new IllegalArgumentException("The space of the output array after the offset is too small.");
         }
 
-        if (message != null)
+        if (fitsInBuffer() == false)
         {
-            throw new IllegalArgumentException(message);
+            byte[] digest = digest();
+
+            return DigestEncoding.HEX.encodeBytes(digest, 0, digest.length, output, offset);
         }
+
+        int length = digestToBuffer();
+
+        return DigestEncoding.HEX.encodeBytes(mBuffer, 0, length, output, offset);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Complete the hash computation and append the resulting hash
+     * value to the given {@code StringBuilder} as a hex string.
+     * The digest is reset after this call is made.
      *
      * <p>
-     * This method is an alias of {@link #update(boolean)
-     * update}{@code (input.booleanValue())}.
+     * The hex characters are appended one by one, so no array is
+     * allocated by this method unless the hash value does not fit in
+     * the internal buffer.
      * </p>
      *
-     * @param input
-     *         Input data.
+     * @param output
+     *         The {@code StringBuilder} to which the hex string is appended.
      *
      * @return
-     *         {@code this} object.
+     *         {@code output}.
      *
-     * @since 1.4
+     * @throws IllegalArgumentException
+     *         {@code output} is {@code null}.
+     *
+     * @since 1.7
      */
-    public Digest update(Boolean input)
+    public StringBuilder digestAsHex(StringBuilder output)
     {
-        if (input == null)
+        if (output == null)
         {
-            return this;
+            throw new IllegalArgumentException("output is null.");
         }
 
-        return update(input.booleanValue());
+        byte[] digest = mBuffer;
+        int    length;
+
+        if (fitsInBuffer())
+        {
+            length = digestToBuffer();
+        }
+        else
+        {
+            digest = digest();
+            length = digest.length;
+        }
+
+        char[] hex = DigestEncoding.HEX_CHARS;
+
+        output.ensureCapacity(output.length() + length * 2);
+
+        for (int i = 0; i < length; ++i)
+        {
+            int b = digest[i];
+
+            output.append(hex[b >>> 4 & 0xF]).append(hex[b & 0xF]);
+        }
+
+        return output;
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Complete the hash computation and append the resulting hash
+     * value to the given {@code Appendable} as a hex string.
+     * The digest is reset after this call is made.
      *
      * <p>
-     * This method is an alias of {@link #update(Boolean[], int, int)
-     * update}{@code (input, 0, input.length)}.
+     * The hex characters are appended one by one, so no array is
+     * allocated by this method unless the hash value does not fit in
+     * the internal buffer.
      * </p>
      *
-     * @param input
-     *         Input data. If null is given, update is not performed.
+     * @param <TAppendable>
+     *         The type of the {@code Appendable}.
+     *
+     * @param output
+     *         The {@code Appendable} to which the hex string is appended.
      *
      * @return
-     *         {@code this} object.
+     *         {@code output}.
      *
-     * @since 1.4
+     * @throws IllegalArgumentException
+     *         {@code output} is {@code null}.
+     *
+     * @throws IOException
+     *         {@code output} threw the exception.
+     *
+     * @since 1.7
      */
-    public Digest update(Boolean[] input)
+    public <TAppendable extends Appendable> TAppendable digestAsHex(TAppendable output) throws IOException
     {
-        if (input == null)
+        if (output == null)
         {
-            return this;
+            throw new IllegalArgumentException("output is null.");
         }
 
-        return update(input, 0, input.length);
+        byte[] digest = mBuffer;
+        int    length;
+
+        if (fitsInBuffer())
+        {
+            length = digestToBuffer();
+        }
+        else
+        {
+            digest = digest();
+            length = digest.length;
+        }
+
+        char[] hex = DigestEncoding.HEX_CHARS;
+
+        for (int i = 0; i < length; ++i)
+        {
+            int b = digest[i];
+
+            output.append(hex[b >>> 4 & 0xF]).append(hex[b & 0xF]);
+        }
+
+        return output;
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Complete the hash computation and get the first 8 bytes of the
+     * resulting hash value as a {@code long}. The digest is reset
+     * after this call is made.
      *
      * <p>
-     * This method calls {@link #update(Boolean)} for each
-     * array element which is in the specified range.
+     * The bytes are interpreted in big-endian order. This method is
+     * useful to get a fingerprint for a hash table key, for example.
+     * No array is allocated by this method.
      * </p>
      *
-     * @param input
-     *         Input data.
-     *
-     * @param offset
-     *         The offset to start from in the array.
-     *
-     * @param length
-     *         The number of elements to use, starting at offset.
-     *
      * @return
-     *         {@code this} object.
-     *
-     * @throws IllegalArgumentException
-     *         The range specified by the parameters is invalid.
+     *         The first 8 bytes of the hash value. If the hash value
+     *         is shorter than 8 bytes, all of its bytes.
      *
-     * @since 1.4
+     * @since 1.7
      */
-    public Digest update(Boolean[] input, int offset, int length)
+    public long digestAsLong()
     {
-        if (input == null)
+        byte[] digest = mBuffer;
+        int    length;
+
+        if (fitsInBuffer())
         {
-            return this;
+            length = Math.min(digestToBuffer(), 8);
+        }
+        else
+        {
+            digest = digest();
+            length = Math.min(digest.length, 8);
         }
 
-        checkRange(input.length, offset, length);
+        long value = 0;
 
         for (int i = 0; i < length; ++i)
         {
-            update(input[i + offset]);
+            value = (value << 8) | (digest[i] & 0xFF);
         }
 
-        return this;
+        return value;
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * @param input
-     *         Input data. {@code true} results in {@link #update(byte)
-     *         update}{@code ((byte)1)} and {@code false} results in
-     *         {@link #update(byte) update}{@code ((byte)0)}.
-     *
-     * @return
-     *         {@code this} object.
+     * Items of a batch given to {@code digestAll} methods.
      */
-    public Digest update(boolean input)
+    private static abstract class Batch
     {
-        return update((byte)(input ? 1 : 0));
+        abstract int size();
+
+
+        /**
+         * Update the digest with the item at the index. {@code null}
+         * items are treated as empty.
+         */
+        abstract void update(Digest digest, int index);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * <p>
-     * This method is an alias of {@link #update(boolean[], int, int)
-     * update}{@code (input, 0, input.length)}.
-     * </p>
-     *
-     * @param input
-     *         Input data. If null is given, update is not performed.
-     *
-     * @return
-     *         {@code this} object.
+     * Task which computes the digests of a range of a batch.
      */
-    public Digest update(boolean[] input)
+    private static final class BatchTask extends RecursiveAction
     {
-        if (input == null)
-        {
-            return this;
-        }
+        private static final long serialVersionUID = 1L;
 
-        return update(input, 0, input.length);
-    }
+        /**
+         * Ranges smaller than this are not split.
+         */
+        private static final int THRESHOLD = 256;
 
+        private final Digest mPrototype;
+        private final Batch mBatch;
+        private final byte[] mOutput;
+        private final int mLength;
+        private final int mFrom;
+        private final int mTo;
 
-    /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * <p>
-     * This method calls {@link #update(boolean)} for each
-     * array element which is in the specified range.
-     * </p>
-     *
-     * @param input
-     *         Input data.
-     *
-     * @param offset
-     *         The offset to start from in the array.
-     *
-     * @param length
-     *         The number of elements to use, starting at offset.
-     *
-     * @return
-     *         {@code this} object.
-     *
-     * @throws IllegalArgumentException
-     *         The range specified by the parameters is invalid.
-     */
-    public Digest update(boolean[] input, int offset, int length)
-    {
-        if (input == null)
+
+        BatchTask(Digest prototype, Batch batch, byte[] output, int length, int from, int to)
         {
-            return this;
+            mPrototype = prototype;
+            mBatch     = batch;
+            mOutput    = output;
+            mLength    = length;
+            mFrom      = from;
+            mTo        = to;
         }
 
-        checkRange(input.length, offset, length);
 
-        for (int i = 0; i < length; ++i)
+        @Override
+        protected void compute()
         {
-            update(input[i + offset]);
-        }
+            if (mTo - mFrom <= THRESHOLD)
+            {
+                Digest digest;
+
+                try
+                {
+                    // The prototype is never updated, so concurrent cloning is safe.
+                    digest = (Digest)mPrototype.clone();
+                }
+                catch (CloneNotSupportedException e)
+                {
+                    // This won't happen because cloning has been tested.
+                    throw new IllegalStateException("Failed to clone the digest.", e);
+                }
+
+                digest.digestRange(mBatch, mOutput, mLength, mFrom, mTo);
+                return;
+            }
 
-        return this;
+            int middle = (mFrom + mTo) >>> 1;
+
+            invokeAll(new BatchTask(mPrototype, mBatch, mOutput, mLength, mFrom, middle),
+                      new BatchTask(mPrototype, mBatch, mOutput, mLength, middle, mTo));
+        }
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Compute the digest of each byte array in the list.
      *
      * <p>
-     * This method is an alias of {@link #update(char)
-     * update}{@code (input.charValue())}.
+     * This {@code Digest} instance is reset first, and then used for
+     * all the items one after another, so no instance is created per
+     * item. The digests are written into one array: the digest of the
+     * item at index {@code i} is at offset {@code i * }{@link
+     * #getDigestLength()}. {@code null} items are treated as empty
+     * arrays. This instance is reset when this method returns.
      * </p>
      *
-     * @param input
-     *         Input data.
+     * @param inputs
+     *         Items to hash.
      *
      * @return
-     *         {@code this} object.
+     *         The digests of the items packed into one array.
      *
-     * @since 1.4
+     * @throws IllegalArgumentException
+     *         {@code inputs} is {@code null}.
+     *
+     * @since 1.7
      */
-    public Digest update(Character input)
+    public byte[] digestAll(List<byte[]> inputs)
     {
-        if (input == null)
-        {
-            return this;
-        }
-
-        return update(input.charValue());
+        return digestAll(toBatch(inputs), null);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Compute the digest of each string in the array. Strings are
+     * encoded in UTF-8 as {@link #update(String)} does.
      *
      * <p>
-     * This method is an alias of {@link #update(Character[], int, int)
-     * update}{@code (input, 0, input.length)}.
+     * See {@link #digestAll(List)} for details. {@code null} items
+     * are treated as empty strings.
      * </p>
      *
-     * @param input
-     *         Input data. If null is given, update is not performed.
+     * @param inputs
+     *         Items to hash.
      *
      * @return
-     *         {@code this} object.
+     *         The digests of the items packed into one array.
      *
-     * @since 1.4
+     * @throws IllegalArgumentException
+     *         {@code inputs} is {@code null}.
+     *
+     * @since 1.7
      */
-    public Digest update(Character[] input)
+    public byte[] digestAll(String[] inputs)
     {
-        if (input == null)
-        {
-            return this;
-        }
-
-        return update(input, 0, input.length);
+        return digestAll(toBatch(inputs), null);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Compute the digest of each byte array in the list in parallel.
      *
      * <p>
-     * This method calls {@link #update(Character)} for each
-     * array element which is in the specified range.
+     * The list is split into ranges, and each range is hashed by a
+     * clone of this {@code Digest} instance on the given pool. The
+     * result is the same as that of {@link #digestAll(List)}. If the
+     * wrapped {@code MessageDigest} does not support cloning, the
+     * items are hashed on the calling thread.
      * </p>
      *
-     * @param input
-     *         Input data.
-     *
-     * @param offset
-     *         The offset to start from in the array.
+     * @param inputs
+     *         Items to hash.
      *
-     * @param length
-     *         The number of elements to use, starting at offset.
+     * @param forkJoinPool
+     *         The pool on which the items are hashed.
      *
      * @return
-     *         {@code this} object.
+     *         The digests of the items packed into one array.
      *
      * @throws IllegalArgumentException
-     *         The range specified by the parameters is invalid.
+     *         {@code inputs} or {@code forkJoinPool} is {@code null}.
      *
-     * @since 1.4
+     * @since 1.7
      */
-    public Digest update(Character[] input, int offset, int length)
+    public byte[] digestAll(List<byte[]> inputs, ForkJoinPool forkJoinPool)
     {
-        if (input == null)
-        {
-            return this;
-        }
-
-        checkRange(input.length, offset, length);
-
-        for (int i = 0; i < length; ++i)
-        {
-            update(input[i + offset]);
-        }
+        checkForkJoinPool(forkJoinPool);
 
-        return this;
+        return digestAll(toBatch(inputs), forkJoinPool);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Compute the digest of each string in the array in parallel.
      *
      * <p>
-     * This method calls {@link #update(byte) update}{@code
-     * ((byte)((input >> 8) & 0xff))} and {@link #update(byte)
-     * update}({@code ((byte)(input >> 0) & 0xff)}.
+     * See {@link #digestAll(List, ForkJoinPool)} for details.
      * </p>
      *
-     * @param input
-     *         Input data.
+     * @param inputs
+     *         Items to hash.
+     *
+     * @param forkJoinPool
+     *         The pool on which the items are hashed.
      *
      * @return
-     *         {@code this} object.
+     *         The digests of the items packed into one array.
+     *
+     * @throws IllegalArgumentException
+     *         {@code inputs} or {@code forkJoinPool} is {@code null}.
+     *
+     * @since 1.7
      */
-    public Digest update(char input)
+    public byte[] digestAll(String[] inputs, ForkJoinPool forkJoinPool)
     {
-        update((byte)((input >> 8) & 0xff));
-        update((byte)((input >> 0) & 0xff));
+        checkForkJoinPool(forkJoinPool);
 
-        return this;
+        return digestAll(toBatch(inputs), forkJoinPool);
     }
 
 
-    /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * <p>
-     * This method is an alias of {@link #update(char[], int, int)
-     * update}{@code (input, 0, input.length)}.
-     * </p>
-     *
-     * @param input
-     *         Input data. If null is given, update is not performed.
-     *
-     * @return
-     *         {@code this} object.
-     */
-    public Digest update(char[] input)
+    private static void checkForkJoinPool(ForkJoinPool forkJoinPool)
     {
-        if (input == null)
+        if (forkJoinPool == null)
         {
-            return this;
+            throw new IllegalArgumentException("forkJoinPool is null.");
         }
-
-        return update(input, 0, input.length);
     }
 
 
-    /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * <p>
-     * This method calls {@link #update(char)} for each
-     * array element which is in the specified range.
-     * </p>
-     *
-     * @param input
-     *         Input data.
-     *
-     * @param offset
-     *         The offset to start from in the array.
-     *
-     * @param length
-     *         The number of elements to use, starting at offset.
-     *
-     * @return
-     *         {@code this} object.
-     *
-     * @throws IllegalArgumentException
-     *         The range specified by the parameters is invalid.
-     */
-    public Digest update(char[] input, int offset, int length)
+    private static Batch toBatch(final List<byte[]> inputs)
     {
-        if (input == null)
+        if (inputs == null)
         {
-            return this;
+            throw new IllegalArgumentException("inputs is null.");
         }
 
-        checkRange(input.length, offset, length);
+        return new Batch() {
+            @Override
+            int size()
+            {
+                return inputs.size();
+            }
 
-        for (int i = 0; i < length; ++i)
+            @Override
+            void update(Digest digest, int index)
+            {
+                byte[] input = inputs.get(index);
+
+                if (input != null)
+                {
+                    digest.update(input);
+                }
+            }
+        };
+    }
+
+
+    private static Batch toBatch(final String[] inputs)
+    {
+        if (inputs == null)
         {
-            update(input[i + offset]);
+            throw new IllegalArgumentException("inputs is null.");
         }
 
-        return this;
+        return new Batch() {
+            @Override
+            int size()
+            {
+                return inputs.length;
+            }
+
+            @Override
+            void update(Digest digest, int index)
+            {
+                digest.update(inputs[index]);
+            }
+        };
+    }
+
+
+    private byte[] digestAll(Batch batch, ForkJoinPool forkJoinPool)
+    {
+        reset();
+
+        int length = getDigestLength();
+
+        if (length == 0)
+        {
+            // The implementation does not know the length in advance.
+            length = digest().length;
+        }
+
+        int size = batch.size();
+        byte[] output = new byte[size * length];
+
+        if (forkJoinPool != null && BatchTask.THRESHOLD < size && isCloneable())
+        {
+            forkJoinPool.invoke(new BatchTask(this, batch, output, length, 0, size));
+        }
+        else
+        {
+            digestRange(batch, output, length, 0, size);
+        }
+
+        return output;
+    }
+
+
+    private void digestRange(Batch batch, byte[] output, int length, int from, int to)
+    {
+        for (int i = from; i < to; ++i)
+        {
+            batch.update(this, i);
+
+            digestTo(output, i * length);
+        }
+    }
+
+
+    private boolean isCloneable()
+    {
+        try
+        {
+            mMessageDigest.clone();
+
+            return true;
+        }
+        catch (CloneNotSupportedException e)
+        {
+            return false;
+        }
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * <p>
-     * This method calls {@link #update(byte) update}{@code
-     * ((byte)((input >> 8) & 0xff))} and {@link #update(byte)
-     * update}({@code ((byte)(input >> 0) & 0xff)}.
-     * </p>
-     *
-     * @param input
-     *         Input data.
-     *
-     * @return
-     *         {@code this} object.
+     * Check if the hash value is known to fit in the staging buffer.
+     * If not, {@link #digestToBuffer()} must not be used.
      */
-    public Digest update(short input)
+    private boolean fitsInBuffer()
     {
-        update((byte)((input >> 8) & 0xff));
-        update((byte)((input >> 0) & 0xff));
+        int length = mMessageDigest.getDigestLength();
 
-        return this;
+        return 0 < length && length <= BUFFER_SIZE;
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * <p>
-     * This method is an alias of {@link #update(short[], int, int)
-     * update}{@code (input, 0, input.length)}.
-     * </p>
-     *
-     * @param input
-     *         Input data. If null is given, update is not performed.
+     * Complete the hash computation and write the resulting hash
+     * value at the head of the staging buffer. The length of the
+     * hash value must have been checked by {@link #fitsInBuffer()}.
      *
      * @return
-     *         {@code this} object.
+     *         The length of the hash value.
      */
-    public Digest update(short[] input)
+    private int digestToBuffer()
     {
-        if (input == null)
+        flush();
+
+        try
         {
-            return this;
+            return mMessageDigest.digest(mBuffer, 0, BUFFER_SIZE);
+        }
+        catch (DigestException e)
+        {
+            throw new IllegalStateException("Failed to compute the digest value.", e);
         }
-
-        return update(input, 0, input.length);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * <p>
-     * This method calls {@link #update(short)} for each
-     * array element which is in the specified range.
-     * </p>
-     *
-     * @param input
-     *         Input data.
-     *
-     * @param offset
-     *         The offset to start from in the array.
-     *
-     * @param length
-     *         The number of elements to use, starting at offset.
+     * Reset the wrapped {@code MessageDigest} instance.
      *
      * @return
      *         {@code this} object.
-     *
-     * @throws IllegalArgumentException
-     *         The range specified by the parameters is invalid.
      */
-    public Digest update(short[] input, int offset, int length)
+    public Digest reset()
     {
-        if (input == null)
-        {
-            return this;
-        }
+        // Discard the data in the staging buffer.
+        mBufferPosition = 0;
 
-        checkRange(input.length, offset, length);
-
-        for (int i = 0; i < length; ++i)
-        {
-            update(input[i + offset]);
-        }
+        mMessageDigest.reset();
 
         return this;
     }
@@ -1506,9 +1749,11 @@ public class Digest implements Cloneable
      * given input data.
      *
      * <p>
-     * This method calls {@link #update(byte)} for each byte of the
-     * 4 bytes from MSB to LSB (from {@code ((input >> 24) & 0xff)}
-     * to {@code ((input >> 0) & 0xff)}).
+     * The given byte is put into the internal staging buffer. The
+     * content of the buffer is passed to the wrapped {@code
+     * MessageDigest} instance in bulk when the buffer becomes full
+     * or when the wrapped instance needs to reflect all the input
+     * data given so far.
      * </p>
      *
      * @param input
@@ -1517,12 +1762,11 @@ public class Digest implements Cloneable
      * @return
      *         {@code this} object.
      */
-    public Digest update(int input)
+    public Digest update(byte input)
     {
-        update((byte)((input >> 24) & 0xff));
-        update((byte)((input >> 16) & 0xff));
-        update((byte)((input >>  8) & 0xff));
-        update((byte)((input >>  0) & 0xff));
+        reserve(1);
+
+        mBuffer[mBufferPosition++] = input;
 
         return this;
     }
@@ -1533,24 +1777,23 @@ public class Digest implements Cloneable
      * given input data.
      *
      * <p>
-     * This method is an alias of {@link #update(int[], int, int)
-     * update}{@code (input, 0, input.length)}.
+     * This method calls {@link MessageDigest#update(byte[]) update(byte[])}
+     * method of the wrapped {@code MessageDigest} instance.
      * </p>
      *
      * @param input
-     *         Input data. If null is given, update is not performed.
+     *         Input data.
      *
      * @return
      *         {@code this} object.
      */
-    public Digest update(int[] input)
+    public Digest update(byte[] input)
     {
-        if (input == null)
-        {
-            return this;
-        }
+        flush();
 
-        return update(input, 0, input.length);
+        mMessageDigest.update(input);
+
+        return this;
     }
 
 
@@ -1559,8 +1802,9 @@ public class Digest implements Cloneable
      * given input data.
      *
      * <p>
-     * This method calls {@link #update(int)} for each
-     * array element which is in the specified range.
+     * This method calls {@link MessageDigest#update(byte[],int,int)
+     * update(byte[], int, int)} method of the wrapped
+     * {@code MessageDigest} instance.
      * </p>
      *
      * @param input
@@ -1574,23 +1818,12 @@ public class Digest implements Cloneable
      *
      * @return
      *         {@code this} object.
-     *
-     * @throws IllegalArgumentException
-     *         The range specified by the parameters is invalid.
      */
-    public Digest update(int[] input, int offset, int length)
+    public Digest update(byte[] input, int offset, int length)
     {
-        if (input == null)
-        {
-            return this;
-        }
+        flush();
 
-        checkRange(input.length, offset, length);
-
-        for (int i = 0; i < length; ++i)
-        {
-            update(input[i + offset]);
-        }
+        mMessageDigest.update(input, offset, length);
 
         return this;
     }
@@ -1601,9 +1834,9 @@ public class Digest implements Cloneable
      * given input data.
      *
      * <p>
-     * This method calls {@link #update(byte)} for each byte of the
-     * 8 bytes from MSB to LSB (from {@code ((input >> 54) & 0xff)}
-     * to {@code ((input >> 0) & 0xff)}).
+     * This method calls {@link MessageDigest#update(ByteBuffer)
+     * update(ByteBuffer)} method of the wrapped {@code MessageDigest}
+     * instance.
      * </p>
      *
      * @param input
@@ -1612,16 +1845,11 @@ public class Digest implements Cloneable
      * @return
      *         {@code this} object.
      */
-    public Digest update(long input)
+    public Digest update(ByteBuffer input)
     {
-        update((byte)((input >> 54) & 0xff));
-        update((byte)((input >> 48) & 0xff));
-        update((byte)((input >> 40) & 0xff));
-        update((byte)((input >> 32) & 0xff));
-        update((byte)((input >> 24) & 0xff));
-        update((byte)((input >> 16) & 0xff));
-        update((byte)((input >>  8) & 0xff));
-        update((byte)((input >>  0) & 0xff));
+        flush();
+
+        mMessageDigest.update(input);
 
         return this;
     }
@@ -1629,160 +1857,1986 @@ public class Digest implements Cloneable
 
     /**
      * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * content of the specified file.
      *
      * <p>
-     * This method is an alias of {@link #update(long[], int, int)
-     * update}{@code (input, 0, input.length)}.
+     * A regular file is processed by {@link #update(FileChannel, long,
+     * long) update}{@code (channel, 0, channel.size())}. Other files
+     * such as named pipes are read until the end of the stream.
      * </p>
      *
      * @param input
-     *         Input data. If null is given, update is not performed.
+     *         The file to read.
      *
      * @return
      *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code input} is {@code null}.
+     *
+     * @throws IOException
+     *         Failed to read the file.
+     *
+     * @since 1.7
      */
-    public Digest update(long[] input)
+    public Digest update(Path input) throws IOException
     {
         if (input == null)
         {
-            return this;
+            throw new IllegalArgumentException("input is null.");
         }
 
-        return update(input, 0, input.length);
+        boolean regular = Files.isRegularFile(input);
+
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ))
+        {
+            if (regular)
+            {
+                return update(channel, 0, channel.size());
+            }
+
+            ByteBuffer buffer = getFileBuffer();
+
+            while (true)
+            {
+                buffer.clear();
+
+                if (channel.read(buffer) < 0)
+                {
+                    return this;
+                }
+
+                buffer.flip();
+                update(buffer);
+            }
+        }
     }
 
 
     /**
      * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * content of the specified range of a file.
      *
      * <p>
-     * This method calls {@link #update(long)} for each
-     * array element which is in the specified range.
+     * This method is equivalent to {@link #update(FileChannel, long,
+     * long, int) update}{@code (input, position, length, }{@link
+     * #DEFAULT_MAPPING_WINDOW_SIZE}{@code )}.
      * </p>
      *
      * @param input
-     *         Input data.
+     *         The file to read.
      *
-     * @param offset
-     *         The offset to start from in the array.
+     * @param position
+     *         The position in the file at which the range starts.
      *
      * @param length
-     *         The number of elements to use, starting at offset.
+     *         The length of the range.
      *
      * @return
      *         {@code this} object.
      *
      * @throws IllegalArgumentException
-     *         The range specified by the parameters is invalid.
-     */
-    public Digest update(long[] input, int offset, int length)
-    {
-        if (input == null)
-        {
-            return this;
-        }
-
-        checkRange(input.length, offset, length);
-
-        for (int i = 0; i < length; ++i)
-        {
-            update(input[i + offset]);
-        }
-
-        return this;
-    }
-
-
-    /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * <p>
-     * This method converts the given {@code float} value to a
-     * {@code int} by {@link Float#floatToRawIntBits(float)}
-     * and then passes it to {@link #update(int)}.
-     * </p>
+     *         {@code input} is {@code null}, or {@code position} or
+     *         {@code length} is negative.
      *
-     * @param input
-     *         Input data.
+     * @throws IOException
+     *         Failed to read the file.
      *
-     * @return
-     *         {@code this} object.
+     * @since 1.7
      */
-    public Digest update(float input)
+    public Digest update(FileChannel input, long position, long length) throws IOException
     {
-        return update(Float.floatToRawIntBits(input));
+        return update(input, position, length, DEFAULT_MAPPING_WINDOW_SIZE);
     }
 
 
     /**
      * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * content of the specified range of a file.
      *
      * <p>
-     * This method is an alias of {@link #update(float[], int, int)
-     * update}{@code (input, 0, input.length)}.
+     * The range is mapped into memory by {@link FileChannel#map(
+     * FileChannel.MapMode, long, long) FileChannel.map} window by
+     * window, and each mapped buffer is given to {@link
+     * #update(ByteBuffer)}. Small ranges, and ranges that cannot be
+     * mapped, are read through a direct buffer instead. If the range
+     * exceeds the end of the file, only the bytes up to the end of
+     * the file are used.
      * </p>
      *
-     * @param input
-     *         Input data. If null is given, update is not performed.
-     *
-     * @return
-     *         {@code this} object.
-     */
-    public Digest update(float[] input)
-    {
-        if (input == null)
-        {
-            return this;
-        }
-
-        return update(input, 0, input.length);
-    }
-
-
-    /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
      * <p>
-     * This method calls {@link #update(float)} for each
-     * array element which is in the specified range.
+     * The position of the channel is not changed, and the channel
+     * is not closed by this method.
      * </p>
      *
      * @param input
-     *         Input data.
+     *         The file to read.
      *
-     * @param offset
-     *         The offset to start from in the array.
+     * @param position
+     *         The position in the file at which the range starts.
      *
      * @param length
-     *         The number of elements to use, starting at offset.
+     *         The length of the range.
+     *
+     * @param windowSize
+     *         The maximum number of bytes mapped at a time.
      *
      * @return
      *         {@code this} object.
      *
      * @throws IllegalArgumentException
-     *         The range specified by the parameters is invalid.
+     *         {@code input} is {@code null}, {@code position} or
+     *         {@code length} is negative, or {@code windowSize} is
+     *         not positive.
+     *
+     * @throws IOException
+     *         Failed to read the file.
+     *
+     * @since 1.7
      */
-    public Digest update(float[] input, int offset, int length)
+    public Digest update(FileChannel input, long position, long length, int windowSize) throws IOException
     {
         if (input == null)
         {
-            return this;
+            throw new IllegalArgumentException("input is null.");
         }
 
-        checkRange(input.length, offset, length);
-
-        for (int i = 0; i < length; ++i)
+        if (position < 0)
         {
-            update(input[i + offset]);
+            throw new IllegalArgumentException("position is negative.");
         }
 
-        return this;
-    }
+        if (length < 0)
+        {
+            throw new IllegalArgumentException("length is negative.");
+        }
+
+        if (windowSize <= 0)
+        {
+            throw new IllegalArgumentException("windowSize is not positive.");
+        }
+
+        long size = input.size();
+
+        if (size <= position)
+        {
+            return this;
+        }
+
+        long end = (size - position < length) ? size : position + length;
+
+        if (end - position < MAPPING_THRESHOLD)
+        {
+            return read(input, position, end);
+        }
+
+        while (position < end)
+        {
+            long window = Math.min(end - position, windowSize);
+            MappedByteBuffer buffer;
+
+            try
+            {
+                buffer = input.map(FileChannel.MapMode.READ_ONLY, position, window);
+            }
+            catch (IOException e)
+            {
+                // Mapping failed (e.g. the address space is exhausted).
+                return read(input, position, end);
+            }
+            catch (UnsupportedOperationException e)
+            {
+                // The channel does not support mapping.
+                return read(input, position, end);
+            }
+
+            update(buffer);
+
+            position += window;
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the content
+     * of the specified file asynchronously, and then complete the hash
+     * computation.
+     *
+     * <p>
+     * This method is equivalent to {@link #digestAsync(Path, Executor,
+     * LongConsumer) digestAsync}{@code (input, executor, null)}.
+     * </p>
+     *
+     * @param input
+     *         The file to read.
+     *
+     * @param executor
+     *         The executor which hashes the data.
+     *
+     * @return
+     *         A future which is completed with the resulting hash value.
+     *
+     * @throws IllegalArgumentException
+     *         {@code input} or {@code executor} is {@code null}.
+     *
+     * @since 1.7
+     */
+    public CompletableFuture<byte[]> digestAsync(Path input, Executor executor)
+    {
+        return digestAsync(input, executor, null);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the content
+     * of the specified file asynchronously, and then complete the hash
+     * computation.
+     *
+     * <p>
+     * The file is read by {@link java.nio.channels.AsynchronousFileChannel
+     * AsynchronousFileChannel} into two buffers alternately, so reading
+     * the next chunk overlaps hashing the current one. Hashing is done
+     * by the given executor, and the calling thread never blocks on
+     * disk I/O.
+     * </p>
+     *
+     * <p>
+     * This {@code Digest} instance must not be used until the returned
+     * future is completed. The digest is reset when the future is
+     * completed normally, as {@link #digest()} does. Cancelling the
+     * future stops reading the file and closes it. The state of this
+     * instance is undefined after cancellation or failure, so call
+     * {@link #reset()} before reusing it.
+     * </p>
+     *
+     * <pre style="background-color: #EEEEEE; margin-left: 2em; margin-right: 2em; border: 1px solid black;">
+     * Digest.{@link #getInstanceSHA256() getInstanceSHA256()}.digestAsync(path, executor)
+     *     .thenApply(Digest::{@link #bytesToHex(byte[]) bytesToHex})
+     *     .thenAccept(checksum -&gt; ...);
+     * </pre>
+     *
+     * @param input
+     *         The file to read.
+     *
+     * @param executor
+     *         The executor which hashes the data.
+     *
+     * @param progress
+     *         A callback which receives the total number of bytes
+     *         hashed so far after each chunk. It is called by the
+     *         executor. {@code null} is allowed.
+     *
+     * @return
+     *         A future which is completed with the resulting hash value,
+     *         or completed exceptionally with an {@link IOException}
+     *         if the file could not be read.
+     *
+     * @throws IllegalArgumentException
+     *         {@code input} or {@code executor} is {@code null}.
+     *
+     * @since 1.7
+     */
+    public CompletableFuture<byte[]> digestAsync(Path input, Executor executor, LongConsumer progress)
+    {
+        if (input == null)
+        {
+            throw new IllegalArgumentException("input is null.");
+        }
+
+        if (executor == null)
+        {
+            throw new IllegalArgumentException("executor is null.");
+        }
+
+        return AsyncFileDigester.start(this, input, executor, progress);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with all the
+     * data read from the given stream.
+     *
+     * <p>
+     * This method is equivalent to {@link #drain(InputStream)} except
+     * that this method returns {@code this} object.
+     * </p>
+     *
+     * @param input
+     *         The stream to read until its end.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code input} is {@code null}.
+     *
+     * @throws IOException
+     *         Failed to read the stream.
+     *
+     * @since 1.7
+     */
+    public Digest update(InputStream input) throws IOException
+    {
+        drain(input);
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with all the
+     * data read from the given channel.
+     *
+     * <p>
+     * This method is equivalent to {@link #drain(ReadableByteChannel)}
+     * except that this method returns {@code this} object.
+     * </p>
+     *
+     * @param input
+     *         The channel to read until its end.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code input} is {@code null}.
+     *
+     * @throws IOException
+     *         Failed to read the channel.
+     *
+     * @since 1.7
+     */
+    public Digest update(ReadableByteChannel input) throws IOException
+    {
+        drain(input);
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with all the
+     * data read from the given stream, and get the number of bytes
+     * read.
+     *
+     * <p>
+     * The stream is read through a buffer owned by this {@code Digest}
+     * instance, so repeated calls do not allocate memory. The buffer
+     * starts small and grows while the stream fills it up on every
+     * read, so that fast sources are read in large chunks. The stream
+     * is not closed by this method.
+     * </p>
+     *
+     * @param input
+     *         The stream to read until its end.
+     *
+     * @return
+     *         The number of bytes read from the stream.
+     *
+     * @throws IllegalArgumentException
+     *         {@code input} is {@code null}.
+     *
+     * @throws IOException
+     *         Failed to read the stream.
+     *
+     * @since 1.7
+     */
+    public long drain(InputStream input) throws IOException
+    {
+        if (input == null)
+        {
+            throw new IllegalArgumentException("input is null.");
+        }
+
+        flush();
+
+        byte[] buffer = getStreamBuffer();
+        long total = 0;
+
+        while (true)
+        {
+            int count = input.read(buffer, 0, buffer.length);
+
+            if (count < 0)
+            {
+                return total;
+            }
+
+            mMessageDigest.update(buffer, 0, count);
+            total += count;
+
+            if (count == buffer.length)
+            {
+                buffer = growStreamBuffer();
+            }
+        }
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with all the
+     * data read from the given channel, and get the number of bytes
+     * read.
+     *
+     * <p>
+     * The channel is read in the same way as {@link #drain(InputStream)}.
+     * It is expected to be in blocking mode. The channel is not closed
+     * by this method.
+     * </p>
+     *
+     * @param input
+     *         The channel to read until its end.
+     *
+     * @return
+     *         The number of bytes read from the channel.
+     *
+     * @throws IllegalArgumentException
+     *         {@code input} is {@code null}.
+     *
+     * @throws IOException
+     *         Failed to read the channel.
+     *
+     * @since 1.7
+     */
+    public long drain(ReadableByteChannel input) throws IOException
+    {
+        if (input == null)
+        {
+            throw new IllegalArgumentException("input is null.");
+        }
+
+        flush();
+
+        ByteBuffer buffer = ByteBuffer.wrap(getStreamBuffer());
+        long total = 0;
+
+        while (true)
+        {
+            buffer.clear();
+
+            int count = input.read(buffer);
+
+            if (count < 0)
+            {
+                return total;
+            }
+
+            mMessageDigest.update(buffer.array(), 0, count);
+            total += count;
+
+            if (count == buffer.capacity())
+            {
+                buffer = ByteBuffer.wrap(growStreamBuffer());
+            }
+        }
+    }
+
+
+    private byte[] getStreamBuffer()
+    {
+        if (mStreamBuffer == null)
+        {
+            mStreamBuffer = new byte[STREAM_BUFFER_INITIAL_SIZE];
+        }
+
+        return mStreamBuffer;
+    }
+
+
+    /**
+     * Double the size of the stream buffer unless it has reached
+     * the maximum size.
+     */
+    private byte[] growStreamBuffer()
+    {
+        if (mStreamBuffer.length < STREAM_BUFFER_MAX_SIZE)
+        {
+            mStreamBuffer = new byte[mStreamBuffer.length * 2];
+        }
+
+        return mStreamBuffer;
+    }
+
+
+    /**
+     * Read the specified range of the file through the direct buffer.
+     */
+    private Digest read(FileChannel input, long position, long end) throws IOException
+    {
+        ByteBuffer buffer = getFileBuffer();
+
+        while (position < end)
+        {
+            buffer.clear();
+            buffer.limit((int)Math.min(end - position, buffer.capacity()));
+
+            int count = input.read(buffer, position);
+
+            if (count < 0)
+            {
+                // The file was truncated.
+                break;
+            }
+
+            buffer.flip();
+            update(buffer);
+
+            position += count;
+        }
+
+        return this;
+    }
+
+
+    private ByteBuffer getFileBuffer()
+    {
+        if (mFileBuffer == null)
+        {
+            mFileBuffer = ByteBuffer.allocateDirect(FILE_BUFFER_SIZE);
+        }
+
+        return mFileBuffer;
+    }
+
+
+    /**
+     * Make sure that the staging buffer has room for the specified
+     * number of bytes. If it does not, the content of the buffer is
+     * flushed.
+     *
+     * @param size
+     *         The number of bytes to put into the staging buffer.
+     */
+    private void reserve(int size)
+    {
+        if (BUFFER_SIZE - mBufferPosition < size)
+        {
+            flush();
+        }
+    }
+
+
+    /**
+     * Make sure that the staging buffer has room for at least one
+     * element of the specified size and get the number of elements
+     * that can be put into the buffer without flushing it.
+     *
+     * @param size
+     *         The size of one element in bytes.
+     *
+     * @return
+     *         The number of elements which the staging buffer has room for.
+     */
+    private int reserveElements(int size)
+    {
+        reserve(size);
+
+        return (BUFFER_SIZE - mBufferPosition) / size;
+    }
+
+
+    /**
+     * Pass the content of the staging buffer to the wrapped
+     * {@code MessageDigest} instance.
+     */
+    private void flush()
+    {
+        if (mBufferPosition == 0)
+        {
+            return;
+        }
+
+        mMessageDigest.update(mBuffer, 0, mBufferPosition);
+
+        mBufferPosition = 0;
+    }
+
+
+    /**
+     * Check the validity of the combination of the given parameters.
+     *
+     * @param size
+     *         Size of an array.
+     *
+     * @param offset
+     *         Offset in the array.
+     *
+     * @param length
+     *         Length of data to use.
+     *
+     * @throws IllegalArgumentException
+     * <ul>
+     * <li>{@code offset < 0}
+     * <li>{@code size <= offset}
+     * <li>{@code length < 0}
+     * <li>{@code size < (offset + length)}
+     * </ul>
+     */
+    private void checkRange(int size, int offset, int length)
+    {
+        String message = null;
+
+        if (offset < 0)
+        {
+            message = "The offset is less than 0.";
+        }
+        else if (size <= offset)
+        {
+            message = "The offset is equal to or greater than the size.";
+        }
+        else if (length < 0)
+        {
+            message = "The length is less than 0.";
+        }
+        else if (size < (offset + length))
+        {
+            message = "The sum of the offset and the length is greater than the size.";
+        }
+
+        if (message != null)
+        {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is an alias of {@link #update(boolean)
+     * update}{@code (input.booleanValue())}.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 1.4
+     */
+    public Digest update(Boolean input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        return update(input.booleanValue());
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is an alias of {@link #update(Boolean[], int, int)
+     * update}{@code (input, 0, input.length)}.
+     * </p>
+     *
+     * @param input
+     *         Input data. If null is given, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 1.4
+     */
+    public Digest update(Boolean[] input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        return update(input, 0, input.length);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method calls {@link #update(Boolean)} for each
+     * array element which is in the specified range.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @param offset
+     *         The offset to start from in the array.
+     *
+     * @param length
+     *         The number of elements to use, starting at offset.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The range specified by the parameters is invalid.
+     *
+     * @since 1.4
+     */
+    public Digest update(Boolean[] input, int offset, int length)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        checkRange(input.length, offset, length);
+
+        for (int i = 0; i < length; ++i)
+        {
+            update(input[i + offset]);
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * @param input
+     *         Input data. {@code true} results in {@link #update(byte)
+     *         update}{@code ((byte)1)} and {@code false} results in
+     *         {@link #update(byte) update}{@code ((byte)0)}.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(boolean input)
+    {
+        return update((byte)(input ? 1 : 0));
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is an alias of {@link #update(boolean[], int, int)
+     * update}{@code (input, 0, input.length)}.
+     * </p>
+     *
+     * @param input
+     *         Input data. If null is given, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(boolean[] input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        return update(input, 0, input.length);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is equivalent to calling {@link #update(boolean)} for
+     * each array element which is in the specified range. Elements
+     * are encoded into the internal staging buffer in chunks, and
+     * each chunk is passed to the wrapped {@code MessageDigest}
+     * instance in one call.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @param offset
+     *         The offset to start from in the array.
+     *
+     * @param length
+     *         The number of elements to use, starting at offset.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The range specified by the parameters is invalid.
+     */
+    public Digest update(boolean[] input, int offset, int length)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        checkRange(input.length, offset, length);
+
+        int index = offset;
+        int end   = offset + length;
+
+        while (index < end)
+        {
+            // Encode as many elements as the staging buffer can hold.
+            int    count  = Math.min(end - index, reserveElements(1));
+            byte[] buffer = mBuffer;
+            int    pos    = mBufferPosition;
+
+            for (int i = 0; i < count; ++i, ++index, pos += 1)
+            {
+                buffer[pos] = (byte)(input[index] ? 1 : 0);
+            }
+
+            mBufferPosition = pos;
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is an alias of {@link #update(char)
+     * update}{@code (input.charValue())}.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 1.4
+     */
+    public Digest update(Character input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        return update(input.charValue());
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is an alias of {@link #update(Character[], int, int)
+     * update}{@code (input, 0, input.length)}.
+     * </p>
+     *
+     * @param input
+     *         Input data. If null is given, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 1.4
+     */
+    public Digest update(Character[] input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        return update(input, 0, input.length);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method calls {@link #update(Character)} for each
+     * array element which is in the specified range.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @param offset
+     *         The offset to start from in the array.
+     *
+     * @param length
+     *         The number of elements to use, starting at offset.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The range specified by the parameters is invalid.
+     *
+     * @since 1.4
+     */
+    public Digest update(Character[] input, int offset, int length)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        checkRange(input.length, offset, length);
+
+        for (int i = 0; i < length; ++i)
+        {
+            update(input[i + offset]);
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is equivalent to calling {@link #update(byte) update}{@code
+     * ((byte)((input >> 8) & 0xff))} and {@link #update(byte)
+     * update}({@code ((byte)(input >> 0) & 0xff)}.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(char input)
+    {
+        reserve(2);
+
+        byte[] buffer = mBuffer;
+        int    pos    = mBufferPosition;
+
+        buffer[pos    ] = (byte)((input >> 8) & 0xff);
+        buffer[pos + 1] = (byte)((input >> 0) & 0xff);
+
+        mBufferPosition = pos + 2;
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is an alias of {@link #update(char[], int, int)
+     * update}{@code (input, 0, input.length)}.
+     * </p>
+     *
+     * @param input
+     *         Input data. If null is given, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(char[] input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        return update(input, 0, input.length);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is equivalent to calling {@link #update(char)} for
+     * each array element which is in the specified range. Elements
+     * are encoded into the internal staging buffer in chunks, and
+     * each chunk is passed to the wrapped {@code MessageDigest}
+     * instance in one call.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @param offset
+     *         The offset to start from in the array.
+     *
+     * @param length
+     *         The number of elements to use, starting at offset.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The range specified by the parameters is invalid.
+     */
+    public Digest update(char[] input, int offset, int length)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        checkRange(input.length, offset, length);
+
+        int index = offset;
+        int end   = offset + length;
+
+        while (index < end)
+        {
+            // Encode as many elements as the staging buffer can hold.
+            int    count  = Math.min(end - index, reserveElements(2));
+            byte[] buffer = mBuffer;
+            int    pos    = mBufferPosition;
+
+            for (int i = 0; i < count; ++i, ++index, pos += 2)
+            {
+                char value = input[index];
+                buffer[pos    ] = (byte)((value >> 8) & 0xff);
+                buffer[pos + 1] = (byte)((value >> 0) & 0xff);
+            }
+
+            mBufferPosition = pos;
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is equivalent to calling {@link #update(byte) update}{@code
+     * ((byte)((input >> 8) & 0xff))} and {@link #update(byte)
+     * update}({@code ((byte)(input >> 0) & 0xff)}.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(short input)
+    {
+        reserve(2);
+
+        byte[] buffer = mBuffer;
+        int    pos    = mBufferPosition;
+
+        buffer[pos    ] = (byte)((input >> 8) & 0xff);
+        buffer[pos + 1] = (byte)((input >> 0) & 0xff);
+
+        mBufferPosition = pos + 2;
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is an alias of {@link #update(short[], int, int)
+     * update}{@code (input, 0, input.length)}.
+     * </p>
+     *
+     * @param input
+     *         Input data. If null is given, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(short[] input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        return update(input, 0, input.length);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is equivalent to calling {@link #update(short)} for
+     * each array element which is in the specified range. Elements
+     * are encoded into the internal staging buffer in chunks, and
+     * each chunk is passed to the wrapped {@code MessageDigest}
+     * instance in one call.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @param offset
+     *         The offset to start from in the array.
+     *
+     * @param length
+     *         The number of elements to use, starting at offset.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The range specified by the parameters is invalid.
+     */
+    public Digest update(short[] input, int offset, int length)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        checkRange(input.length, offset, length);
+
+        int index = offset;
+        int end   = offset + length;
+
+        while (index < end)
+        {
+            // Encode as many elements as the staging buffer can hold.
+            int    count  = Math.min(end - index, reserveElements(2));
+            byte[] buffer = mBuffer;
+            int    pos    = mBufferPosition;
+
+            for (int i = 0; i < count; ++i, ++index, pos += 2)
+            {
+                short value = input[index];
+                buffer[pos    ] = (byte)((value >> 8) & 0xff);
+                buffer[pos + 1] = (byte)((value >> 0) & 0xff);
+            }
+
+            mBufferPosition = pos;
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is equivalent to calling {@link #update(byte)} for
+     * each byte of the 4 bytes from MSB to LSB (from {@code ((input >> 24) & 0xff)}
+     * to {@code ((input >> 0) & 0xff)}).
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(int input)
+    {
+        reserve(4);
+
+        byte[] buffer = mBuffer;
+        int    pos    = mBufferPosition;
+
+        buffer[pos    ] = (byte)((input >> 24) & 0xff);
+        buffer[pos + 1] = (byte)((input >> 16) & 0xff);
+        buffer[pos + 2] = (byte)((input >>  8) & 0xff);
+        buffer[pos + 3] = (byte)((input >>  0) & 0xff);
+
+        mBufferPosition = pos + 4;
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is an alias of {@link #update(int[], int, int)
+     * update}{@code (input, 0, input.length)}.
+     * </p>
+     *
+     * @param input
+     *         Input data. If null is given, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(int[] input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        return update(input, 0, input.length);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is equivalent to calling {@link #update(int)} for
+     * each array element which is in the specified range. Elements
+     * are encoded into the internal staging buffer in chunks, and
+     * each chunk is passed to the wrapped {@code MessageDigest}
+     * instance in one call.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @param offset
+     *         The offset to start from in the array.
+     *
+     * @param length
+     *         The number of elements to use, starting at offset.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The range specified by the parameters is invalid.
+     */
+    public Digest update(int[] input, int offset, int length)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        checkRange(input.length, offset, length);
+
+        int index = offset;
+        int end   = offset + length;
+
+        while (index < end)
+        {
+            // Encode as many elements as the staging buffer can hold.
+            int    count  = Math.min(end - index, reserveElements(4));
+            byte[] buffer = mBuffer;
+            int    pos    = mBufferPosition;
+
+            for (int i = 0; i < count; ++i, ++index, pos += 4)
+            {
+                int value = input[index];
+                buffer[pos    ] = (byte)((value >> 24) & 0xff);
+                buffer[pos + 1] = (byte)((value >> 16) & 0xff);
+                buffer[pos + 2] = (byte)((value >>  8) & 0xff);
+                buffer[pos + 3] = (byte)((value >>  0) & 0xff);
+            }
+
+            mBufferPosition = pos;
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is equivalent to calling {@link #update(byte)} for
+     * each byte of the 8 bytes from MSB to LSB (from {@code ((input >> 54) & 0xff)}
+     * to {@code ((input >> 0) & 0xff)}).
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(long input)
+    {
+        reserve(8);
+
+        byte[] buffer = mBuffer;
+        int    pos    = mBufferPosition;
+
+        buffer[pos    ] = (byte)((input >> 54) & 0xff);
+        buffer[pos + 1] = (byte)((input >> 48) & 0xff);
+        buffer[pos + 2] = (byte)((input >> 40) & 0xff);
+        buffer[pos + 3] = (byte)((input >> 32) & 0xff);
+        buffer[pos + 4] = (byte)((input >> 24) & 0xff);
+        buffer[pos + 5] = (byte)((input >> 16) & 0xff);
+        buffer[pos + 6] = (byte)((input >>  8) & 0xff);
+        buffer[pos + 7] = (byte)((input >>  0) & 0xff);
+
+        mBufferPosition = pos + 8;
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is an alias of {@link #update(long[], int, int)
+     * update}{@code (input, 0, input.length)}.
+     * </p>
+     *
+     * @param input
+     *         Input data. If null is given, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(long[] input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        return update(input, 0, input.length);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is equivalent to calling {@link #update(long)} for
+     * each array element which is in the specified range. Elements
+     * are encoded into the internal staging buffer in chunks, and
+     * each chunk is passed to the wrapped {@code MessageDigest}
+     * instance in one call.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @param offset
+     *         The offset to start from in the array.
+     *
+     * @param length
+     *         The number of elements to use, starting at offset.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The range specified by the parameters is invalid.
+     */
+    public Digest update(long[] input, int offset, int length)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        checkRange(input.length, offset, length);
+
+        int index = offset;
+        int end   = offset + length;
+
+        while (index < end)
+        {
+            // Encode as many elements as the staging buffer can hold.
+            int    count  = Math.min(end - index, reserveElements(8));
+            byte[] buffer = mBuffer;
+            int    pos    = mBufferPosition;
+
+            for (int i = 0; i < count; ++i, ++index, pos += 8)
+            {
+                long value = input[index];
+                buffer[pos    ] = (byte)((value >> 54) & 0xff);
+                buffer[pos + 1] = (byte)((value >> 48) & 0xff);
+                buffer[pos + 2] = (byte)((value >> 40) & 0xff);
+                buffer[pos + 3] = (byte)((value >> 32) & 0xff);
+                buffer[pos + 4] = (byte)((value >> 24) & 0xff);
+                buffer[pos + 5] = (byte)((value >> 16) & 0xff);
+                buffer[pos + 6] = (byte)((value >>  8) & 0xff);
+                buffer[pos + 7] = (byte)((value >>  0) & 0xff);
+            }
+
+            mBufferPosition = pos;
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method converts the given {@code float} value to a
+     * {@code int} by {@link Float#floatToRawIntBits(float)}
+     * and then passes it to {@link #update(int)}.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(float input)
+    {
+        return update(Float.floatToRawIntBits(input));
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is an alias of {@link #update(float[], int, int)
+     * update}{@code (input, 0, input.length)}.
+     * </p>
+     *
+     * @param input
+     *         Input data. If null is given, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(float[] input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        return update(input, 0, input.length);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is equivalent to calling {@link #update(float)} for
+     * each array element which is in the specified range. Elements
+     * are encoded into the internal staging buffer in chunks, and
+     * each chunk is passed to the wrapped {@code MessageDigest}
+     * instance in one call.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @param offset
+     *         The offset to start from in the array.
+     *
+     * @param length
+     *         The number of elements to use, starting at offset.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The range specified by the parameters is invalid.
+     */
+    public Digest update(float[] input, int offset, int length)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        checkRange(input.length, offset, length);
+
+        int index = offset;
+        int end   = offset + length;
+
+        while (index < end)
+        {
+            // Encode as many elements as the staging buffer can hold.
+            int    count  = Math.min(end - index, reserveElements(4));
+            byte[] buffer = mBuffer;
+            int    pos    = mBufferPosition;
+
+            for (int i = 0; i < count; ++i, ++index, pos += 4)
+            {
+                int value = Float.floatToRawIntBits(input[index]);
+                buffer[pos    ] = (byte)((value >> 24) & 0xff);
+                buffer[pos + 1] = (byte)((value >> 16) & 0xff);
+                buffer[pos + 2] = (byte)((value >>  8) & 0xff);
+                buffer[pos + 3] = (byte)((value >>  0) & 0xff);
+            }
+
+            mBufferPosition = pos;
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method converts the given {@code double} value to a
+     * {@code long} by {@link Double#doubleToRawLongBits(double)}
+     * and then passes it to {@link #update(long)}.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(double input)
+    {
+        return update(Double.doubleToRawLongBits(input));
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is an alias of {@link #update(double[], int, int)
+     * update}{@code (input, 0, input.length)}.
+     * </p>
+     *
+     * @param input
+     *         Input data. If null is given, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(double[] input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        return update(input, 0, input.length);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is equivalent to calling {@link #update(double)} for
+     * each array element which is in the specified range. Elements
+     * are encoded into the internal staging buffer in chunks, and
+     * each chunk is passed to the wrapped {@code MessageDigest}
+     * instance in one call.
+     * </p>
+     *
+     * @param input
+     *         Input data.
+     *
+     * @param offset
+     *         The offset to start from in the array.
+     *
+     * @param length
+     *         The number of elements to use, starting at offset.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The range specified by the parameters is invalid.
+     */
+    public Digest update(double[] input, int offset, int length)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        checkRange(input.length, offset, length);
+
+        int index = offset;
+        int end   = offset + length;
+
+        while (index < end)
+        {
+            // Encode as many elements as the staging buffer can hold.
+            int    count  = Math.min(end - index, reserveElements(8));
+            byte[] buffer = mBuffer;
+            int    pos    = mBufferPosition;
+
+            for (int i = 0; i < count; ++i, ++index, pos += 8)
+            {
+                long value = Double.doubleToRawLongBits(input[index]);
+                buffer[pos    ] = (byte)((value >> 54) & 0xff);
+                buffer[pos + 1] = (byte)((value >> 48) & 0xff);
+                buffer[pos + 2] = (byte)((value >> 40) & 0xff);
+                buffer[pos + 3] = (byte)((value >> 32) & 0xff);
+                buffer[pos + 4] = (byte)((value >> 24) & 0xff);
+                buffer[pos + 5] = (byte)((value >> 16) & 0xff);
+                buffer[pos + 6] = (byte)((value >>  8) & 0xff);
+                buffer[pos + 7] = (byte)((value >>  0) & 0xff);
+            }
+
+            mBufferPosition = pos;
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method checks the class of the given instance and
+     * calls a corresponding {@code update} method.
+     * </p>
+     *
+     * <table border="1" style="margin: 1em; border-collapse: collapse; padding: 5px;">
+     *   <caption></caption>
+     *   <tr style="background-color: orange;">
+     *     <th>Class</th>
+     *     <th>Executed code</th>
+     *   </tr>
+     *   <tr>
+     *     <td>{@code Byte}</td>
+     *     <td>{@link #update(byte) update}{@code (((Byte)number).byteValue())}</td>
+     *   </tr>
+     *   <tr>
+     *     <td>{@code Short}</td>
+     *     <td>{@link #update(short) update}{@code (((Short)number).shortValue())}</td>
+     *   </tr>
+     *   <tr>
+     *     <td>{@code Integer}</td>
+     *     <td>{@link #update(int) update}{@code (((Integer)number).intValue())}</td>
+     *   </tr>
+     *   <tr>
+     *     <td>{@code Long}</td>
+     *     <td>{@link #update(long) update}{@code (((Long)number).longValue())}</td>
+     *   </tr>
+     *   <tr>
+     *     <td>{@code Float}</td>
+     *     <td>{@link #update(float) update}{@code (((Float)number).floatValue())}</td>
+     *   </tr>
+     *   <tr>
+     *     <td>{@code Double}</td>
+     *     <td>{@link #update(double) update}{@code (((Double)number).doubleValue())}</td>
+     *   </tr>
+     *   <tr>
+     *     <td>{@code BigInteger}</td>
+     *     <td>{@link #update(byte[]) update}{@code (((BigInteger)number).toByteArray())}</td>
+     *   </tr>
+     *   <tr>
+     *     <td>{@code BigDecimal}</td>
+     *     <td>{@link #update(String) update}{@code (((BigDecimal)number).toString())}</td>
+     *   </tr>
+     *   <tr>
+     *     <td>{@code AtomicInteger}</td>
+     *     <td>{@link #update(int) update}{@code (((AtomicInteger)number).intValue())}</td>
+     *   </tr>
+     *   <tr>
+     *     <td>{@code AtomicLong}</td>
+     *     <td>{@link #update(long) update}{@code (((AtomicLong)number).longValue())}</td>
+     *   </tr>
+     *   <tr>
+     *     <td>Others</td>
+     *     <td>Ignored.</td>
+     *   </tr>
+     * </table>
+     *
+     * @param number
+     *         Input data. If null or none of the above, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 1.1
+     */
+    public Digest update(Number number)
+    {
+        if (number == null)
+        {
+            return this;
+        }
+
+        // Byte
+        if (number instanceof Byte)
+        {
+            update(((Byte)number).byteValue());
+        }
+        // Short
+        else if (number instanceof Short)
+        {
+            update(((Short)number).shortValue());
+        }
+        // Integer
+        else if (number instanceof Integer)
+        {
+            update(((Integer)number).intValue());
+        }
+        // Long
+        else if (number instanceof Long)
+        {
+            update(((Long)number).longValue());
+        }
+        // Float
+        else if (number instanceof Float)
+        {
+            update(((Float)number).floatValue());
+        }
+        // Double
+        else if (number instanceof Double)
+        {
+            update(((Double)number).doubleValue());
+        }
+        // BigInteger
+        else if (number instanceof BigInteger)
+        {
+            update(((BigInteger)number).toByteArray());
+        }
+        // BigDecimal
+        else if (number instanceof BigDecimal)
+        {
+            update(((BigDecimal)number).toString());
+        }
+        // AtomicInteger
+        else if (number instanceof AtomicInteger)
+        {
+            update(((AtomicInteger)number).intValue());
+        }
+        // AtomicLong
+        else if (number instanceof AtomicLong)
+        {
+            update(((AtomicLong)number).longValue());
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method is an alias of {@link #update(Number[], int, int)
+     * update}{@code (input, 0, input.length)}.
+     * </p>
+     *
+     * @param <TNumber>
+     *         The subclass of the {@link Number} class.
+     *
+     * @param input
+     *         Input data. If null is given, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 1.1
+     */
+    public <TNumber extends Number> Digest update(TNumber[] input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        return update(input, 0, input.length);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method calls {@link #update(Number)} for each
+     * array element which is in the specified range.
+     * </p>
+     *
+     * @param <TNumber>
+     *         The subclass of the {@link Number} class.
+     *
+     * @param input
+     *         Input data.
+     *
+     * @param offset
+     *         The offset to start from in the array.
+     *
+     * @param length
+     *         The number of elements to use, starting at offset.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The range specified by the parameters is invalid.
+     *
+     * @since 1.1
+     */
+    public <TNumber extends Number> Digest update(TNumber[] input, int offset, int length)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        checkRange(input.length, offset, length);
+
+        for (int i = 0; i < length; ++i)
+        {
+            update(input[i + offset]);
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method updates the digest with the bytes of the given
+     * string encoded in UTF-8. The result is the same as that of
+     * {@link #update(byte[]) update}{@code (input.getBytes("UTF-8"))},
+     * but this method encodes the string into the internal staging
+     * buffer and does not allocate a byte array.
+     * </p>
+     *
+     * @param input
+     *         Input data. If null is given, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(String input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        updateUtf8(input);
+
+        return this;
+    }
+
+
+    /**
+     * Encode the given string in UTF-8 into the staging buffer.
+     *
+     * <p>
+     * Unpaired surrogates are encoded as {@code '?'} in the same way
+     * as {@link String#getBytes(String)} does.
+     * </p>
+     *
+     * @param input
+     *         A string to encode.
+     */
+    private void updateUtf8(String input)
+    {
+        int length = input.length();
+        int index  = 0;
+
+        while (index < length)
+        {
+            // Make sure that the staging buffer has room for the
+            // longest UTF-8 sequence (4 bytes).
+            reserve(4);
+
+            byte[] buffer = mBuffer;
+            int    pos    = mBufferPosition;
+            int    limit  = BUFFER_SIZE - 4;
+
+            // Fast loop for ASCII characters.
+            int end = Math.min(length, index + (BUFFER_SIZE - pos));
+
+            for (; index < end; ++index)
+            {
+                char ch = input.charAt(index);
+
+                if (0x80 <= ch)
+                {
+                    break;
+                }
+
+                buffer[pos++] = (byte)ch;
+            }
+
+            // Loop for any characters.
+            while (index < length && pos <= limit)
+            {
+                char ch = input.charAt(index++);
+
+                if (ch < 0x80)
+                {
+                    buffer[pos++] = (byte)ch;
+                }
+                else if (ch < 0x800)
+                {
+                    buffer[pos++] = (byte)(0xC0 | (ch >> 6));
+                    buffer[pos++] = (byte)(0x80 | (ch & 0x3F));
+                }
+                else if (Character.isSurrogate(ch) == false)
+                {
+                    buffer[pos++] = (byte)(0xE0 | (ch >> 12));
+                    buffer[pos++] = (byte)(0x80 | ((ch >> 6) & 0x3F));
+                    buffer[pos++] = (byte)(0x80 | (ch & 0x3F));
+                }
+                else if (Character.isHighSurrogate(ch) && index < length &&
+                         Character.isLowSurrogate(input.charAt(index)))
+                {
+                    int cp = Character.toCodePoint(ch, input.charAt(index++));
+
+                    buffer[pos++] = (byte)(0xF0 | (cp >> 18));
+                    buffer[pos++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                    buffer[pos++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+                    buffer[pos++] = (byte)(0x80 | (cp & 0x3F));
+                }
+                else
+                {
+                    // Unpaired surrogate.
+                    buffer[pos++] = (byte)'?';
+                }
+            }
+
+            mBufferPosition = pos;
+        }
+    }
 
 
     /**
@@ -1790,436 +3844,666 @@ public class Digest implements Cloneable
      * given input data.
      *
      * <p>
-     * This method converts the given {@code double} value to a
-     * {@code long} by {@link Double#doubleToRawLongBits(double)}
-     * and then passes it to {@link #update(long)}.
+     * This method is an alias of {@link #update(String[], int, int)
+     * update}{@code (input, 0, input.length)}.
+     * </p>
+     *
+     * @param input
+     *         Input data. If null is given, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public Digest update(String[] input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        return update(input, 0, input.length);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method calls {@link #update(String)} for each
+     * array element which is in the specified range.
      * </p>
      *
      * @param input
      *         Input data.
      *
+     * @param offset
+     *         The offset to start from in the array.
+     *
+     * @param length
+     *         The number of elements to use, starting at offset.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The range specified by the parameters is invalid.
+     */
+    public Digest update(String[] input, int offset, int length)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        checkRange(input.length, offset, length);
+
+        for (int i = 0; i < length; ++i)
+        {
+            update(input[i + offset]);
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method calls {@link #update(Object)} for each element.
+     * </p>
+     *
+     * @param input
+     *         Input data. If {@code null} is given, update is not performed.
+     *         {@code null} elements are ignored. Elements of unsupported
+     *         classes are ignored, too.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 1.1
+     */
+    public Digest update(Iterable<?> input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        for (Object element : input)
+        {
+            if (element == null)
+            {
+                continue;
+            }
+
+            update(element);
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method calls {@link #update(Object)} for each element.
+     * </p>
+     *
+     * @param input
+     *         Input data. If {@code null} is given, update is not performed.
+     *         {@code null} elements are ignored. Elements of unsupported
+     *         classes are ignored, too.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 1.4
+     */
+    public Digest update(Object... input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        for (Object element : input)
+        {
+            if (element == null)
+            {
+                continue;
+            }
+
+            update(element);
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given input data.
+     *
+     * <p>
+     * This method checks the class of the given object and calls
+     * a corresponding {@code update} method. If a {@link DigestUpdater}
+     * has been registered by {@link #registerUpdater(Class, DigestUpdater)}
+     * for the class or its super type, the updater is used. Objects of
+     * unsupported classes are ignored.
+     * </p>
+     *
+     * <p>
+     * The method to use for a class is resolved only once, so the cost
+     * of this method does not depend on the number of supported classes.
+     * </p>
+     *
+     * @param input
+     *         Input data. If {@code null} is given, update is not performed.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 1.4
+     */
+    public Digest update(Object input)
+    {
+        if (input == null)
+        {
+            return this;
+        }
+
+        DigestUpdaterRegistry.get(input.getClass()).update(this, input);
+
+        return this;
+    }
+
+
+    /**
+     * Register an updater which {@link #update(Object)} uses for
+     * objects of the specified type and its subtypes.
+     *
+     * <p>
+     * Registered updaters take precedence over the built-in handling
+     * of {@link #update(Object)}. If updaters are registered for
+     * multiple super types of a class, the updater registered for the
+     * class itself is used, or else the one registered first is used.
+     * Registering an updater for a type which already has one replaces
+     * the existing updater.
+     * </p>
+     *
+     * <p>
+     * Registration affects all {@code Digest} instances. It is expected
+     * to be done at the start of an application because it discards the
+     * cached resolution results of all classes.
+     * </p>
+     *
+     * @param <T>
+     *         The type of objects which the updater handles.
+     *
+     * @param type
+     *         The type of objects which the updater handles.
+     *
+     * @param updater
+     *         The updater.
+     *
+     * @throws IllegalArgumentException
+     *         {@code type} or {@code updater} is {@code null}.
+     *
+     * @since 1.7
+     */
+    public static <T> void registerUpdater(Class<T> type, DigestUpdater<? super T> updater)
+    {
+        if (type == null)
+        {
+            throw new IllegalArgumentException("type is null.");
+        }
+
+        if (updater == null)
+        {
+            throw new IllegalArgumentException("updater is null.");
+        }
+
+        DigestUpdaterRegistry.register(type, updater);
+    }
+
+
+    /**
+     * Unregister the updater which has been registered for the specified
+     * type by {@link #registerUpdater(Class, DigestUpdater)}.
+     *
+     * @param type
+     *         The type for which the updater has been registered.
+     *         If {@code null} is given, nothing is done.
+     *
+     * @since 1.7
+     */
+    public static void unregisterUpdater(Class<?> type)
+    {
+        if (type == null)
+        {
+            return;
+        }
+
+        DigestUpdaterRegistry.unregister(type);
+    }
+
+
+    /**
+     * Update the wrapped {@code MessageDigest} object with the
+     * given JSON. This method updates the digest based on the
+     * content of the given JSON, and in the respect, this method
+     * is different from {@link #update(String)}.
+     *
+     * <p>
+     * JSONs with the same content, for example, two JSONs below,
+     * generate the same digest.
+     * </p>
+     *
+     * <pre>
+     * { "key1":"value1", "key2":"value2" }
+     * { "key1" : "value1" , "key2" : "value2" }
+     * </pre>
+     *
+     * <p>
+     * If {@link Feature#IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL}
+     * is enabled (it is disabled by default), key-value entries
+     * with value 'null' are treated as if they did not exist.
+     * Therefore, two JSONs below generate the same digest value.
+     * </p>
+     *
+     * <pre>
+     * { "key1":"value1", "key2":null }
+     * { "key1":"value1" }
+     * </pre>
+     *
+     * <p>
+     * If {@link Feature#SORT_JSON_OBJECT_ENTRY_KEYS} is enabled
+     * (it is enabled by default), orders of JSON object keys do
+     * not matter. Therefore, two JSONs below generate the same
+     * digest value.
+     * </p>
+     *
+     * <pre>
+     * { "key1":"value1", "key2":"value2" }
+     * { "key2":"value2", "key1":"value1" }
+     * </pre>
+     *
+     * <p>
+     * If {@link Feature#SORT_JSON_OBJECT_ENTRY_KEYS} is disabled, the
+     * JSON is processed token by token without building a node tree,
+     * so memory usage does not grow with the size of the JSON. JSONs
+     * with duplicate keys fall back to the tree-based processing, in
+     * which the last value of the duplicate keys is used.
+     * </p>
+     *
+     * @param json
+     *         JSON.
+     *
      * @return
      *         {@code this} object.
+     *
+     * @throws IOException
+     *         Failed to parse the given JSON, or the nesting depth of
+     *         the JSON exceeds {@link #getJsonMaxDepth()}.
+     *
+     * @since 1.2
      */
-    public Digest update(double input)
+    public Digest updateJson(String json) throws IOException
     {
-        return update(Double.doubleToRawLongBits(input));
+        return JsonDigestUpdater.getInstance().update(this, json);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * <p>
-     * This method is an alias of {@link #update(double[], int, int)
-     * update}{@code (input, 0, input.length)}.
-     * </p>
+     * Update the wrapped {@code MessageDigest} object with the given JSON.
+     * The encoding (UTF-8, UTF-16 or UTF-32) is detected automatically,
+     * and the result is the same as that of {@link #updateJson(String)}
+     * with the decoded string.
      *
-     * @param input
-     *         Input data. If null is given, update is not performed.
+     * @param json
+     *         JSON.
      *
      * @return
      *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code json} is {@code null}.
+     *
+     * @throws IOException
+     *         Failed to read or parse the JSON, or the nesting depth of
+     *         the JSON exceeds {@link #getJsonMaxDepth()}.
+     *
+     * @since 1.7
      */
-    public Digest update(double[] input)
+    public Digest updateJson(byte[] json) throws IOException
     {
-        if (input == null)
+        if (json == null)
         {
-            return this;
+            throw new IllegalArgumentException("json is null.");
         }
 
-        return update(input, 0, input.length);
+        return JsonDigestUpdater.getInstance().update(this, json, 0, json.length);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * <p>
-     * This method calls {@link #update(double)} for each
-     * array element which is in the specified range.
-     * </p>
+     * Update the wrapped {@code MessageDigest} object with the JSON
+     * in the specified range of the given byte array. The encoding
+     * (UTF-8, UTF-16 or UTF-32) is detected automatically, and the
+     * result is the same as that of {@link #updateJson(String)} with
+     * the decoded string.
      *
-     * @param input
-     *         Input data.
+     * @param json
+     *         JSON.
      *
      * @param offset
      *         The offset to start from in the array.
      *
      * @param length
-     *         The number of elements to use, starting at offset.
+     *         The number of bytes to use, starting at {@code offset}.
      *
      * @return
      *         {@code this} object.
      *
      * @throws IllegalArgumentException
-     *         The range specified by the parameters is invalid.
+     *         {@code json} is {@code null}, or the range specified by
+     *         {@code offset} and {@code length} is invalid.
+     *
+     * @throws IOException
+     *         Failed to read or parse the JSON, or the nesting depth of
+     *         the JSON exceeds {@link #getJsonMaxDepth()}.
+     *
+     * @since 1.7
      */
-    public Digest update(double[] input, int offset, int length)
+    public Digest updateJson(byte[] json, int offset, int length) throws IOException
     {
-        if (input == null)
+        if (json == null)
         {
-            return this;
+            throw new IllegalArgumentException("json is null.");
         }
 
-        checkRange(input.length, offset, length);
-
-        for (int i = 0; i < length; ++i)
-        {
-            update(input[i + offset]);
-        }
+        checkRange(json.length, offset, length);
 
-        return this;
+        return JsonDigestUpdater.getInstance().update(this, json, offset, length);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * <p>
-     * This method checks the class of the given instance and
-     * calls a corresponding {@code update} method.
-     * </p>
-     *
-     * <table border="1" style="margin: 1em; border-collapse: collapse; padding: 5px;">
-     *   <caption></caption>
-     *   <tr style="background-color: orange;">
-     *     <th>Class</th>
-     *     <th>Executed code</th>
-     *   </tr>
-     *   <tr>
-     *     <td>{@code Byte}</td>
-     *     <td>{@link #update(byte) update}{@code (((Byte)number).byteValue())}</td>
-     *   </tr>
-     *   <tr>
-     *     <td>{@code Short}</td>
-     *     <td>{@link #update(short) update}{@code (((Short)number).shortValue())}</td>
-     *   </tr>
-     *   <tr>
-     *     <td>{@code Integer}</td>
-     *     <td>{@link #update(int) update}{@code (((Integer)number).intValue())}</td>
-     *   </tr>
-     *   <tr>
-     *     <td>{@code Long}</td>
-     *     <td>{@link #update(long) update}{@code (((Long)number).longValue())}</td>
-     *   </tr>
-     *   <tr>
-     *     <td>{@code Float}</td>
-     *     <td>{@link #update(float) update}{@code (((Float)number).floatValue())}</td>
-     *   </tr>
-     *   <tr>
-     *     <td>{@code Double}</td>
-     *     <td>{@link #update(double) update}{@code (((Double)number).doubleValue())}</td>
-     *   </tr>
-     *   <tr>
-     *     <td>{@code BigInteger}</td>
-     *     <td>{@link #update(byte[]) update}{@code (((BigInteger)number).toByteArray())}</td>
-     *   </tr>
-     *   <tr>
-     *     <td>{@code BigDecimal}</td>
-     *     <td>{@link #update(String) update}{@code (((BigDecimal)number).toString())}</td>
-     *   </tr>
-     *   <tr>
-     *     <td>{@code AtomicInteger}</td>
-     *     <td>{@link #update(int) update}{@code (((AtomicInteger)number).intValue())}</td>
-     *   </tr>
-     *   <tr>
-     *     <td>{@code AtomicLong}</td>
-     *     <td>{@link #update(long) update}{@code (((AtomicLong)number).longValue())}</td>
-     *   </tr>
-     *   <tr>
-     *     <td>Others</td>
-     *     <td>Ignored.</td>
-     *   </tr>
-     * </table>
+     * Update the wrapped {@code MessageDigest} object with the JSON
+     * in the remaining bytes of the given buffer. The encoding (UTF-8,
+     * UTF-16 or UTF-32) is detected automatically, and the result is
+     * the same as that of {@link #updateJson(String)} with the decoded
+     * string. As {@link #update(ByteBuffer)} does, the position of the
+     * buffer is advanced to its limit.
      *
-     * @param number
-     *         Input data. If null or none of the above, update is not performed.
+     * @param json
+     *         JSON.
      *
      * @return
      *         {@code this} object.
      *
-     * @since 1.1
+     * @throws IllegalArgumentException
+     *         {@code json} is {@code null}.
+     *
+     * @throws IOException
+     *         Failed to read or parse the JSON, or the nesting depth of
+     *         the JSON exceeds {@link #getJsonMaxDepth()}.
+     *
+     * @since 1.7
      */
-    public Digest update(Number number)
+    public Digest updateJson(ByteBuffer json) throws IOException
     {
-        if (number == null)
-        {
-            return this;
-        }
-
-        // Byte
-        if (number instanceof Byte)
-        {
-            update(((Byte)number).byteValue());
-        }
-        // Short
-        else if (number instanceof Short)
-        {
-            update(((Short)number).shortValue());
-        }
-        // Integer
-        else if (number instanceof Integer)
-        {
-            update(((Integer)number).intValue());
-        }
-        // Long
-        else if (number instanceof Long)
-        {
-            update(((Long)number).longValue());
-        }
-        // Float
-        else if (number instanceof Float)
-        {
-            update(((Float)number).floatValue());
-        }
-        // Double
-        else if (number instanceof Double)
-        {
-            update(((Double)number).doubleValue());
-        }
-        // BigInteger
-        else if (number instanceof BigInteger)
-        {
-            update(((BigInteger)number).toByteArray());
-        }
-        // BigDecimal
-        else if (number instanceof BigDecimal)
-        {
-            update(((BigDecimal)number).toString());
-        }
-        // AtomicInteger
-        else if (number instanceof AtomicInteger)
-        {
-            update(((AtomicInteger)number).intValue());
-        }
-        // AtomicLong
-        else if (number instanceof AtomicLong)
+        if (json == null)
         {
-            update(((AtomicLong)number).longValue());
+            throw new IllegalArgumentException("json is null.");
         }
 
-        return this;
+        return JsonDigestUpdater.getInstance().update(this, json);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Update the wrapped {@code MessageDigest} object with the JSON
+     * read from the given stream. The encoding (UTF-8, UTF-16 or
+     * UTF-32) is detected automatically, and the result is the same
+     * as that of {@link #updateJson(String)} with the decoded string.
      *
      * <p>
-     * This method is an alias of {@link #update(Number[], int, int)
-     * update}{@code (input, 0, input.length)}.
+     * A stream cannot be read twice, so the JSON is always converted
+     * to a node tree even if {@link Feature#SORT_JSON_OBJECT_ENTRY_KEYS}
+     * is disabled. To process a large JSON without building a tree,
+     * use {@link #updateJson(Path)} or {@link #updateJson(byte[])}.
      * </p>
      *
-     * @param <TNumber>
-     *         The subclass of the {@link Number} class.
-     *
-     * @param input
-     *         Input data. If null is given, update is not performed.
+     * @param json
+     *         The stream to read the JSON from. It is not closed by
+     *         this method.
      *
      * @return
      *         {@code this} object.
      *
-     * @since 1.1
+     * @throws IllegalArgumentException
+     *         {@code json} is {@code null}.
+     *
+     * @throws IOException
+     *         Failed to read or parse the JSON, or the nesting depth of
+     *         the JSON exceeds {@link #getJsonMaxDepth()}.
+     *
+     * @since 1.7
      */
-    public <TNumber extends Number> Digest update(TNumber[] input)
+    public Digest updateJson(InputStream json) throws IOException
     {
-        if (input == null)
+        if (json == null)
         {
-            return this;
+            throw new IllegalArgumentException("json is null.");
         }
 
-        return update(input, 0, input.length);
+        return JsonDigestUpdater.getInstance().update(this, json);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Update the wrapped {@code MessageDigest} object with the JSON
+     * read from the given reader. The result is the same as that of
+     * {@link #updateJson(String)} with the text read.
      *
      * <p>
-     * This method calls {@link #update(Number)} for each
-     * array element which is in the specified range.
+     * As in the case of {@link #updateJson(InputStream)}, the JSON is
+     * always converted to a node tree.
      * </p>
      *
-     * @param <TNumber>
-     *         The subclass of the {@link Number} class.
-     *
-     * @param input
-     *         Input data.
-     *
-     * @param offset
-     *         The offset to start from in the array.
-     *
-     * @param length
-     *         The number of elements to use, starting at offset.
+     * @param json
+     *         The reader to read the JSON from. It is not closed by
+     *         this method.
      *
      * @return
      *         {@code this} object.
      *
      * @throws IllegalArgumentException
-     *         The range specified by the parameters is invalid.
+     *         {@code json} is {@code null}.
      *
-     * @since 1.1
+     * @throws IOException
+     *         Failed to read or parse the JSON, or the nesting depth of
+     *         the JSON exceeds {@link #getJsonMaxDepth()}.
+     *
+     * @since 1.7
      */
-    public <TNumber extends Number> Digest update(TNumber[] input, int offset, int length)
+    public Digest updateJson(Reader json) throws IOException
     {
-        if (input == null)
-        {
-            return this;
-        }
-
-        checkRange(input.length, offset, length);
-
-        for (int i = 0; i < length; ++i)
+        if (json == null)
         {
-            update(input[i + offset]);
+            throw new IllegalArgumentException("json is null.");
         }
 
-        return this;
+        return JsonDigestUpdater.getInstance().update(this, json);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Update the wrapped {@code MessageDigest} object with the JSON
+     * in the specified file. The encoding (UTF-8, UTF-16 or UTF-32)
+     * is detected automatically, and the result is the same as that
+     * of {@link #updateJson(String)} with the decoded content.
      *
      * <p>
-     * This method converts the given string into bytes with the
-     * character set of UTF-8 and then passes the byte array to
-     * {@link #update(byte[])}.
+     * The file may be read more than once, for example when {@link
+     * Feature#SORT_JSON_OBJECT_ENTRY_KEYS} is disabled and the JSON
+     * contains duplicate keys.
      * </p>
      *
-     * @param input
-     *         Input data. If null is given, update is not performed.
+     * @param json
+     *         The file which contains the JSON.
      *
      * @return
      *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code json} is {@code null}.
+     *
+     * @throws IOException
+     *         Failed to read or parse the JSON, or the nesting depth of
+     *         the JSON exceeds {@link #getJsonMaxDepth()}.
+     *
+     * @since 1.7
      */
-    public Digest update(String input)
+    public Digest updateJson(Path json) throws IOException
     {
-        if (input == null)
+        if (json == null)
         {
-            return this;
+            throw new IllegalArgumentException("json is null.");
         }
 
-        try
-        {
-            return update(input.getBytes("UTF-8"));
-        }
-        catch (UnsupportedEncodingException e)
-        {
-            // This won't happen.
-            return this;
-        }
+        return JsonDigestUpdater.getInstance().update(this, json);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Update the wrapped {@code MessageDigest} object with the given
+     * JSON node tree. No text is serialized or parsed.
      *
      * <p>
-     * This method is an alias of {@link #update(String[], int, int)
-     * update}{@code (input, 0, input.length)}.
+     * The result is the same as that of {@link #updateJson(String)} with
+     * the JSON from which the tree was built. Floating point numbers are
+     * normalized in the same way regardless of whether the tree was built
+     * with {@code DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS}, but
+     * digits lost by parsing numbers as {@code double} cannot be restored.
      * </p>
      *
-     * @param input
-     *         Input data. If null is given, update is not performed.
+     * @param json
+     *         JSON node tree.
      *
      * @return
      *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code json} is {@code null}.
+     *
+     * @throws IOException
+     *         The nesting depth of the tree exceeds {@link #getJsonMaxDepth()}.
+     *
+     * @since 1.7
      */
-    public Digest update(String[] input)
+    public Digest updateJson(JsonNode json) throws IOException
     {
-        if (input == null)
+        if (json == null)
         {
-            return this;
+            throw new IllegalArgumentException("json is null.");
         }
 
-        return update(input, 0, input.length);
+        return JsonDigestUpdater.getInstance().update(this, json);
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Update the wrapped {@code MessageDigest} object with the JSON value
+     * read from the given parser.
      *
      * <p>
-     * This method calls {@link #update(String)} for each
-     * array element which is in the specified range.
+     * The value starts at the current token of the parser, or at the
+     * next token if the parser has no current token. After this method
+     * returns, the parser is located at the last token of the value, so
+     * the caller can continue to read the following content. The parser
+     * is not closed by this method. If the parser has no more tokens,
+     * the result is the same as that of an empty JSON.
      * </p>
      *
-     * @param input
-     *         Input data.
-     *
-     * @param offset
-     *         The offset to start from in the array.
+     * <p>
+     * The value is always converted to a node tree because the parser
+     * cannot be rewound.
+     * </p>
      *
-     * @param length
-     *         The number of elements to use, starting at offset.
+     * @param json
+     *         Parser to read a JSON value from.
      *
      * @return
      *         {@code this} object.
      *
      * @throws IllegalArgumentException
-     *         The range specified by the parameters is invalid.
+     *         {@code json} is {@code null}.
+     *
+     * @throws IOException
+     *         Failed to read or parse the JSON, or the nesting depth of
+     *         the JSON exceeds {@link #getJsonMaxDepth()}.
+     *
+     * @since 1.7
      */
-    public Digest update(String[] input, int offset, int length)
+    public Digest updateJson(JsonParser json) throws IOException
     {
-        if (input == null)
+        if (json == null)
         {
-            return this;
+            throw new IllegalArgumentException("json is null.");
         }
 
-        checkRange(input.length, offset, length);
+        return JsonDigestUpdater.getInstance().update(this, json);
+    }
 
-        for (int i = 0; i < length; ++i)
-        {
-            update(input[i + offset]);
-        }
 
-        return this;
+    /**
+     * Check if the specified feature is enabled.
+     *
+     * @param feature
+     *         Feature to check.
+     *
+     * @return
+     *         {@code true} if the feature is enabled. Otherwise, {@code false}.
+     *
+     * @since 1.2
+     */
+    public boolean isEnabled(Feature feature)
+    {
+        return (mFeatures & mask(feature)) != 0;
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
+     * Enable or disable the specified feature.
      *
-     * <p>
-     * This method calls {@link #update(Object)} for each element.
-     * </p>
+     * @param feature
+     *         {@link Feature} to enable or disable.
      *
-     * @param input
-     *         Input data. If {@code null} is given, update is not performed.
-     *         {@code null} elements are ignored. Elements of unsupported
-     *         classes are ignored, too.
+     * @param enabled
+     *         {@code true} to enable the feature.
+     *         {@code false} to disable the feature.
      *
      * @return
      *         {@code this} object.
      *
-     * @since 1.1
+     * @since 1.2
      */
-    public Digest update(Iterable<?> input)
+    public Digest setEnabled(Feature feature, boolean enabled)
     {
-        if (input == null)
+        if (enabled)
         {
-            return this;
+            mFeatures |= mask(feature);
         }
-
-        for (Object element : input)
+        else
         {
-            if (element == null)
-            {
-                continue;
-            }
-
-            update(element);
+            mFeatures &= ~mask(feature);
         }
 
         return this;
@@ -2227,259 +4511,167 @@ public class Digest implements Cloneable
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * <p>
-     * This method calls {@link #update(Object)} for each element.
-     * </p>
-     *
-     * @param input
-     *         Input data. If {@code null} is given, update is not performed.
-     *         {@code null} elements are ignored. Elements of unsupported
-     *         classes are ignored, too.
+     * Get the set of enabled features.
      *
      * @return
-     *         {@code this} object.
+     *         A new set containing the features that are enabled.
+     *         Changes made to the returned set do not affect this
+     *         {@code Digest} instance.
      *
-     * @since 1.4
+     * @since 1.7
      */
-    public Digest update(Object... input)
+    public EnumSet<Feature> getFeatures()
     {
-        if (input == null)
-        {
-            return this;
-        }
+        EnumSet<Feature> features = EnumSet.noneOf(Feature.class);
 
-        for (Object element : input)
+        for (Feature feature : Feature.values())
         {
-            if (element == null)
+            if (isEnabled(feature))
             {
-                continue;
+                features.add(feature);
             }
-
-            update(element);
         }
 
-        return this;
+        return features;
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given input data.
-     *
-     * <p>
-     * This method checks the class of the given object and calls
-     * a corresponding {@code update} method.
-     * </p>
+     * Set the enabled features at once. Features contained in the
+     * given set are enabled and the others are disabled.
      *
-     * @param input
-     *         Input data. If {@code null} is given, update is not performed.
+     * @param features
+     *         Features to enable.
      *
      * @return
      *         {@code this} object.
      *
-     * @since 1.4
+     * @throws IllegalArgumentException
+     *         {@code features} is {@code null}.
+     *
+     * @since 1.7
      */
-    public Digest update(Object input)
+    public Digest setFeatures(Set<Feature> features)
     {
-        if (input == null)
+        if (features == null)
         {
-            return this;
+            throw new IllegalArgumentException("features is null.");
         }
 
-        if (input instanceof String)
-        {
-            update((String)input);
-        }
-        else if (input instanceof String[])
-        {
-            update((String[])input);
-        }
-        else if (input instanceof Character)
-        {
-            update((Character)input);
-        }
-        else if (input instanceof Character[])
-        {
-            update((Character[])input);
-        }
-        else if (input instanceof Boolean)
-        {
-            update((Boolean)input);
-        }
-        else if (input instanceof boolean[])
-        {
-            update((boolean[])input);
-        }
-        else if (input instanceof Boolean[])
-        {
-            update((Boolean[])input);
-        }
-        else if (input instanceof Number)
-        {
-            update((Number)input);
-        }
-        else if (input instanceof byte[])
-        {
-            update((byte[])input);
-        }
-        else if (input instanceof Byte[])
-        {
-            update((Byte[])input);
-        }
-        else if (input instanceof ByteBuffer)
-        {
-            update((ByteBuffer)input);
-        }
-        else if (input instanceof char[])
-        {
-            update((char[])input);
-        }
-        else if (input instanceof double[])
-        {
-            update((double[])input);
-        }
-        else if (input instanceof Double[])
-        {
-            update((Double[])input);
-        }
-        else if (input instanceof float[])
-        {
-            update((float[])input);
-        }
-        else if (input instanceof Float[])
-        {
-            update((Float[])input);
-        }
-        else if (input instanceof int[])
-        {
-            update((int[])input);
-        }
-        else if (input instanceof Integer[])
-        {
-            update((Integer[])input);
-        }
-        else if (input instanceof long[])
-        {
-            update((long[])input);
-        }
-        else if (input instanceof Long[])
-        {
-            update((Long[])input);
-        }
-        else if (input instanceof short[])
-        {
-            update((short[])input);
-        }
-        else if (input instanceof Short[])
-        {
-            update((Short[])input);
-        }
-        else if (input instanceof Iterable<?>)
+        int bits = 0;
+
+        for (Feature feature : features)
         {
-            update((Iterable<?>)input);
+            bits |= mask(feature);
         }
 
+        mFeatures = bits;
+
         return this;
     }
 
 
     /**
-     * Update the wrapped {@code MessageDigest} object with the
-     * given JSON. This method updates the digest based on the
-     * content of the given JSON, and in the respect, this method
-     * is different from {@link #update(String)}.
-     *
-     * <p>
-     * JSONs with the same content, for example, two JSONs below,
-     * generate the same digest.
-     * </p>
+     * Get the maximum nesting depth of JSON arrays and objects accepted
+     * by {@link #updateJson(String)}.
      *
-     * <pre>
-     * { "key1":"value1", "key2":"value2" }
-     * { "key1" : "value1" , "key2" : "value2" }
-     * </pre>
-     *
-     * <p>
-     * If {@link Feature#IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL}
-     * is enabled (it is disabled by default), key-value entries
-     * with value 'null' are treated as if they did not exist.
-     * Therefore, two JSONs below generate the same digest value.
-     * </p>
+     * @return
+     *         The maximum nesting depth.
      *
-     * <pre>
-     * { "key1":"value1", "key2":null }
-     * { "key1":"value1" }
-     * </pre>
+     * @since 1.7
+     */
+    public int getJsonMaxDepth()
+    {
+        return mJsonMaxDepth;
+    }
+
+
+    /**
+     * Set the maximum nesting depth of JSON arrays and objects accepted
+     * by {@link #updateJson(String)}. The default value is {@link
+     * #DEFAULT_JSON_MAX_DEPTH}.
      *
      * <p>
-     * If {@link Feature#SORT_JSON_OBJECT_ENTRY_KEYS} is enabled
-     * (it is enabled by default), orders of JSON object keys do
-     * not matter. Therefore, two JSONs below generate the same
-     * digest value.
+     * JSONs are traversed without recursion, so the limit does not
+     * depend on the size of the thread stack. It protects against
+     * malicious JSONs with extremely deep nesting.
      * </p>
      *
-     * <pre>
-     * { "key1":"value1", "key2":"value2" }
-     * { "key2":"value2", "key1":"value1" }
-     * </pre>
-     *
-     * @param json
-     *         JSON.
+     * @param depth
+     *         The maximum nesting depth. {@code "[]"} has the depth 1.
      *
      * @return
      *         {@code this} object.
      *
-     * @throws IOException
-     *         Failed to parse the given JSON.
+     * @throws IllegalArgumentException
+     *         {@code depth} is less than 1.
      *
-     * @since 1.2
+     * @since 1.7
      */
-    public Digest updateJson(String json) throws IOException
+    public Digest setJsonMaxDepth(int depth)
     {
-        return new JsonDigestUpdater().update(this, json);
+        if (depth < 1)
+        {
+            throw new IllegalArgumentException("depth is less than 1.");
+        }
+
+        mJsonMaxDepth = depth;
+
+        return this;
     }
 
 
     /**
-     * Check if the specified feature is enabled.
-     *
-     * @param feature
-     *         Feature to check.
-     *
-     * @return
-     *         {@code true} if the feature is enabled. Otherwise, {@code false}.
-     *
-     * @since 1.2
+     * Get the bits that represent the enabled features.
      */
-    public boolean isEnabled(Feature feature)
+    int getFeatureBits()
     {
-        return mFeatures.get(feature).booleanValue();
+        return mFeatures;
     }
 
 
     /**
-     * Enable or disable the specified feature.
-     *
-     * @param feature
-     *         {@link Feature} to enable or disable.
-     *
-     * @param enabled
-     *         {@code true} to enable the feature.
-     *         {@code false} to disable the feature.
+     * Set the bits that represent the enabled features.
+     */
+    void setFeatureBits(int features)
+    {
+        mFeatures = features;
+    }
+
+
+    /**
+     * Get a copy of the state of the wrapped {@code MessageDigest}
+     * instance, which can be given to {@link #restore(MessageDigest)}
+     * later to cancel updates made after this call.
      *
      * @return
-     *         {@code this} object.
-     *
-     * @since 1.2
+     *         A copy of the state, or {@code null} if the wrapped
+     *         instance does not support cloning.
      */
-    public Digest setEnabled(Feature feature, boolean enabled)
+    MessageDigest snapshot()
     {
-        mFeatures.put(feature, Boolean.valueOf(enabled));
+        flush();
 
-        return this;
+        try
+        {
+            return (MessageDigest)mMessageDigest.clone();
+        }
+        catch (CloneNotSupportedException e)
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     * Restore the state saved by {@link #snapshot()}.
+     */
+    void restore(MessageDigest snapshot)
+    {
+        // Discard the data in the staging buffer.
+        mBufferPosition = 0;
+
+        mMessageDigest = snapshot;
     }
 
 
@@ -2494,17 +4686,6 @@ public class Digest implements Cloneable
      */
     public static String bytesToHex(byte[] bytes)
     {
-        // http://stackoverflow.com/a/9855338/1174054
-        char[] hexChars = new char[bytes.length * 2];
-        int v;
-
-        for (int j = 0; j < bytes.length; ++j)
-        {
-            v = bytes[j] & 0xFF;
-            hexChars[j * 2] = mHexArray[v >>> 4];
-            hexChars[j * 2 + 1] = mHexArray[v & 0x0F];
-        }
-
-        return new String(hexChars);
+        return DigestEncoding.HEX.encode(bytes, 0, bytes.length);
     }
 }
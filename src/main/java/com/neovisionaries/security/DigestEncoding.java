@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+/**
+ * Text encodings of digest values.
+ *
+ * <p>
+ * Unlike encoders of Apache Commons Codec given to {@link
+ * Digest#digestAsString(org.apache.commons.codec.BinaryEncoder)
+ * Digest.digestAsString(BinaryEncoder)}, the encodings write
+ * characters directly from bytes in one pass without creating
+ * intermediate arrays.
+ * </p>
+ *
+ * <pre style="background-color: #EEEEEE; margin-left: 2em; margin-right: 2em; border: 1px solid black;">
+ * <span style="color: darkgreen;">// 'etag' will have "KuAUcjF9GTWoR5fsGYOuJD_Gqig".</span>
+ * String etag = Digest.{@link Digest#getInstanceSHA1() getInstanceSHA1()}
+ *               .{@link Digest#update(String) update}(<span style="color: #990000">"Hello, world."</span>)
+ *               .{@link Digest#digestAsString(DigestEncoding) digestAsString}({@link #BASE64URL});
+ * </pre>
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+public enum DigestEncoding
+{
+    /**
+     * Hex with lowercase letters ({@code 0-9a-f}).
+     * This is the encoding used by {@link Digest#digestAsString()}.
+     */
+    HEX
+    {
+        @Override
+        public int getEncodedLength(int length)
+        {
+            return length * 2;
+        }
+
+
+        @Override
+        int encodeBytes(byte[] input, int offset, int length, char[] output, int outputOffset)
+        {
+            // http://stackoverflow.com/a/9855338/1174054
+            int o = outputOffset;
+
+            for (int i = offset, end = offset + length; i < end; ++i)
+            {
+                int v = input[i] & 0xFF;
+                output[o++] = HEX_CHARS[v >>> 4];
+                output[o++] = HEX_CHARS[v & 0x0F];
+            }
+
+            return o - outputOffset;
+        }
+    },
+
+
+    /**
+     * Base64 defined in <a href="https://tools.ietf.org/html/rfc4648#section-4"
+     * >RFC 4648, 4. Base 64 Encoding</a>, with padding and without line
+     * separators. The result is the same as that of {@link
+     * org.apache.commons.codec.binary.Base64#Base64() new Base64()} of
+     * Apache Commons Codec.
+     */
+    BASE64
+    {
+        @Override
+        public int getEncodedLength(int length)
+        {
+            return ((length + 2) / 3) * 4;
+        }
+
+
+        @Override
+        int encodeBytes(byte[] input, int offset, int length, char[] output, int outputOffset)
+        {
+            return encodeBase64(BASE64_CHARS, true, input, offset, length, output, outputOffset);
+        }
+    },
+
+
+    /**
+     * Base64 with URL and filename safe alphabet defined in <a href=
+     * "https://tools.ietf.org/html/rfc4648#section-5">RFC 4648, 5. Base 64
+     * Encoding with URL and Filename Safe Alphabet</a>, without padding.
+     * The result is the same as that of {@link
+     * org.apache.commons.codec.binary.Base64#encodeBase64URLSafeString(byte[])
+     * Base64.encodeBase64URLSafeString(byte[])} of Apache Commons Codec.
+     */
+    BASE64URL
+    {
+        @Override
+        public int getEncodedLength(int length)
+        {
+            return (length * 4 + 2) / 3;
+        }
+
+
+        @Override
+        int encodeBytes(byte[] input, int offset, int length, char[] output, int outputOffset)
+        {
+            return encodeBase64(BASE64URL_CHARS, false, input, offset, length, output, outputOffset);
+        }
+    },
+
+
+    /**
+     * Base32 defined in <a href="https://tools.ietf.org/html/rfc4648#section-6"
+     * >RFC 4648, 6. Base 32 Encoding</a>, with padding. The result is the
+     * same as that of {@link org.apache.commons.codec.binary.Base32#Base32()
+     * new Base32()} of Apache Commons Codec.
+     */
+    BASE32
+    {
+        @Override
+        public int getEncodedLength(int length)
+        {
+            return ((length + 4) / 5) * 8;
+        }
+
+
+        @Override
+        int encodeBytes(byte[] input, int offset, int length, char[] output, int outputOffset)
+        {
+            int i   = offset;
+            int end = offset + length;
+            int o   = outputOffset;
+
+            // 5 bytes to 8 characters.
+            for (; 5 <= end - i; i += 5)
+            {
+                long v = ((long)(input[i    ] & 0xFF) << 32)
+                       | ((long)(input[i + 1] & 0xFF) << 24)
+                       | ((long)(input[i + 2] & 0xFF) << 16)
+                       | ((long)(input[i + 3] & 0xFF) <<  8)
+                       | ((long)(input[i + 4] & 0xFF));
+
+                for (int shift = 35; 0 <= shift; shift -= 5)
+                {
+                    output[o++] = BASE32_CHARS[(int)(v >>> shift) & 0x1F];
+                }
+            }
+
+            int remaining = end - i;
+
+            if (remaining == 0)
+            {
+                return o - outputOffset;
+            }
+
+            // The remaining bytes, left-aligned in 40 bits.
+            long v = 0;
+
+            for (int k = 0; k < remaining; ++k)
+            {
+                v |= (long)(input[i + k] & 0xFF) << (32 - k * 8);
+            }
+
+            // 1 byte -> 2 chars, 2 -> 4, 3 -> 5, 4 -> 7
+            int count = (remaining * 8 + 4) / 5;
+
+            for (int k = 0, shift = 35; k < count; ++k, shift -= 5)
+            {
+                output[o++] = BASE32_CHARS[(int)(v >>> shift) & 0x1F];
+            }
+
+            // Padding
+            for (int k = count; k < 8; ++k)
+            {
+                output[o++] = '=';
+            }
+
+            return o - outputOffset;
+        }
+    };
+
+
+    static final char[] HEX_CHARS =
+        "0123456789abcdef".toCharArray();
+
+
+    private static final char[] BASE64_CHARS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+
+    private static final char[] BASE64URL_CHARS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+
+    private static final char[] BASE32_CHARS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".toCharArray();
+
+
+    /**
+     * Get the number of characters which this encoding generates
+     * for the specified number of bytes.
+     *
+     * @param length
+     *         The number of bytes.
+     *
+     * @return
+     *         The number of characters.
+     */
+    public abstract int getEncodedLength(int length);
+
+
+    /**
+     * Encode the bytes in the specified range into the given array.
+     * The caller has checked the ranges.
+     */
+    abstract int encodeBytes(byte[] input, int offset, int length, char[] output, int outputOffset);
+
+
+    /**
+     * Encode the bytes in the specified range into the given array.
+     *
+     * @param input
+     *         Bytes to encode.
+     *
+     * @param offset
+     *         The offset to start from in the input.
+     *
+     * @param length
+     *         The number of bytes to encode.
+     *
+     * @param output
+     *         Output buffer. It must have room for {@link
+     *         #getEncodedLength(int) getEncodedLength}{@code (length)}
+     *         characters after {@code outputOffset}.
+     *
+     * @param outputOffset
+     *         The offset into the output buffer to begin storing characters.
+     *
+     * @return
+     *         The number of characters written.
+     *
+     * @throws IllegalArgumentException
+     *         An argument is {@code null} or a range is invalid.
+     */
+    public int encode(byte[] input, int offset, int length, char[] output, int outputOffset)
+    {
+        if (input == null)
+        {
+            throw new IllegalArgumentException("input is null.");
+        }
+
+        if (output == null)
+        {
+            throw new IllegalArgumentException("output is null.");
+        }
+
+        if (offset < 0 || length < 0 || input.length - offset < length)
+        {
+            throw new IllegalArgumentException("The input range is invalid.");
+        }
+
+        if (outputOffset < 0 || output.length - outputOffset < getEncodedLength(length))
+        {
+            throw new IllegalArgumentException("The space of the output array after the offset is too small.");
+        }
+
+        return encodeBytes(input, offset, length, output, outputOffset);
+    }
+
+
+    /**
+     * Encode the given bytes into a string.
+     *
+     * @param input
+     *         Bytes to encode.
+     *
+     * @return
+     *         The encoded string.
+     *
+     * @throws IllegalArgumentException
+     *         {@code input} is {@code null}.
+     */
+    public String encode(byte[] input)
+    {
+        if (input == null)
+        {
+            throw new IllegalArgumentException("input is null.");
+        }
+
+        return encode(input, 0, input.length);
+    }
+
+
+    /**
+     * Encode the bytes in the specified range into a string.
+     * The caller has checked the range.
+     */
+    String encode(byte[] input, int offset, int length)
+    {
+        char[] chars = new char[getEncodedLength(length)];
+
+        encodeBytes(input, offset, length, chars, 0);
+
+        return new String(chars);
+    }
+
+
+    private static int encodeBase64(
+            char[] table, boolean padding, byte[] input, int offset, int length, char[] output, int outputOffset)
+    {
+        int i   = offset;
+        int end = offset + length;
+        int o   = outputOffset;
+
+        // 3 bytes to 4 characters.
+        for (; 3 <= end - i; i += 3)
+        {
+            int v = ((input[i] & 0xFF) << 16) | ((input[i + 1] & 0xFF) << 8) | (input[i + 2] & 0xFF);
+
+            output[o++] = table[(v >>> 18)       ];
+            output[o++] = table[(v >>> 12) & 0x3F];
+            output[o++] = table[(v >>>  6) & 0x3F];
+            output[o++] = table[(v       ) & 0x3F];
+        }
+
+        int remaining = end - i;
+
+        if (remaining == 1)
+        {
+            int v = (input[i] & 0xFF) << 16;
+
+            output[o++] = table[(v >>> 18)       ];
+            output[o++] = table[(v >>> 12) & 0x3F];
+
+            if (padding)
+            {
+                output[o++] = '=';
+                output[o++] = '=';
+            }
+        }
+        else if (remaining == 2)
+        {
+            int v = ((input[i] & 0xFF) << 16) | ((input[i + 1] & 0xFF) << 8);
+
+            output[o++] = table[(v >>> 18)       ];
+            output[o++] = table[(v >>> 12) & 0x3F];
+            output[o++] = table[(v >>>  6) & 0x3F];
+
+            if (padding)
+            {
+                output[o++] = '=';
+            }
+        }
+
+        return o - outputOffset;
+    }
+}
@@ -0,0 +1,566 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import com.neovisionaries.security.Digest.Feature;
+
+
+/**
+ * Pool of {@link Digest} instances which share the same configuration.
+ *
+ * <p>
+ * {@code Digest} is not thread-safe. This class hands out instances
+ * to threads and takes them back for reuse, so that request-scoped
+ * hashing does not have to create a new instance every time.
+ * </p>
+ *
+ * <p>
+ * Each platform thread keeps one idle instance of its own. Instances
+ * released while the thread already keeps one, and instances released
+ * by virtual threads, go to a shared pool whose size is bounded. Virtual
+ * threads do not use the per-thread cache because they are usually
+ * short-lived and numerous.
+ * </p>
+ *
+ * <pre style="background-color: #EEEEEE; margin-left: 2em; margin-right: 2em; border: 1px solid black;">
+ * DigestPool pool = new DigestPool(Digest.{@link Digest#getInstanceSHA256() getInstanceSHA256()});
+ *
+ * try (DigestPool.Lease lease = pool.{@link #lease()})
+ * {
+ *     String etag = lease.{@link Lease#getDigest() getDigest()}.update(body).digestAsString();
+ * }
+ * </pre>
+ *
+ * <p>
+ * Instances are reset and their features are restored to those of
+ * the prototype when they are released.
+ * </p>
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+public class DigestPool
+{
+    /**
+     * The default maximum number of idle instances in the shared pool.
+     */
+    public static final int DEFAULT_MAX_SHARED_SIZE = 64;
+
+
+    /**
+     * A {@link Digest} instance leased from a pool. Closing a lease
+     * returns the instance to the pool.
+     */
+    public static final class Lease implements AutoCloseable
+    {
+        private final DigestPool mPool;
+        private Digest mDigest;
+
+
+        private Lease(DigestPool pool, Digest digest)
+        {
+            mPool   = pool;
+            mDigest = digest;
+        }
+
+
+        /**
+         * Get the leased {@code Digest} instance.
+         *
+         * @return
+         *         The leased instance.
+         *
+         * @throws IllegalStateException
+         *         The lease has already been closed.
+         */
+        public Digest getDigest()
+        {
+            if (mDigest == null)
+            {
+                throw new IllegalStateException("The lease has already been closed.");
+            }
+
+            return mDigest;
+        }
+
+
+        /**
+         * Return the leased instance to the pool. Calling this method
+         * more than once has no effect.
+         */
+        @Override
+        public void close()
+        {
+            if (mDigest == null)
+            {
+                return;
+            }
+
+            Digest digest = mDigest;
+            mDigest = null;
+
+            mPool.release(digest);
+        }
+    }
+
+
+    /**
+     * {@code Thread.isVirtual()} which is available since Java 21.
+     */
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+
+    /**
+     * Pools created by {@link #getInstance(String, Set)}.
+     */
+    private static final ConcurrentMap<String, DigestPool> sPools =
+            new ConcurrentHashMap<String, DigestPool>();
+
+
+    private final Digest mPrototype;
+    private final String mAlgorithm;
+    private final int mFeatures;
+    private final int mJsonMaxDepth;
+    private final int mMaxSharedSize;
+    private final ThreadLocal<Digest[]> mLocal;
+    private final ConcurrentLinkedQueue<Digest> mShared;
+    private final AtomicInteger mSharedSize;
+    private final LongAdder mLocalHitCount;
+    private final LongAdder mSharedHitCount;
+    private final LongAdder mMissCount;
+
+
+    /**
+     * Constructor with a prototype. The maximum number of idle instances
+     * in the shared pool is {@link #DEFAULT_MAX_SHARED_SIZE}.
+     *
+     * @param prototype
+     *         A {@code Digest} instance whose algorithm, provider and
+     *         features are used by instances in this pool. The prototype
+     *         itself is not modified by this pool.
+     *
+     * @throws IllegalArgumentException
+     *         {@code prototype} is {@code null}, or it does not support
+     *         cloning.
+     */
+    public DigestPool(Digest prototype)
+    {
+        this(prototype, DEFAULT_MAX_SHARED_SIZE);
+    }
+
+
+    /**
+     * Constructor with a prototype and the maximum number of idle
+     * instances in the shared pool.
+     *
+     * @param prototype
+     *         A {@code Digest} instance whose algorithm, provider and
+     *         features are used by instances in this pool. The prototype
+     *         itself is not modified by this pool.
+     *
+     * @param maxSharedSize
+     *         The maximum number of idle instances in the shared pool.
+     *         Instances released when the shared pool is full are
+     *         discarded.
+     *
+     * @throws IllegalArgumentException
+     *         {@code prototype} is {@code null}, it does not support
+     *         cloning, or {@code maxSharedSize} is negative.
+     */
+    public DigestPool(Digest prototype, int maxSharedSize)
+    {
+        if (prototype == null)
+        {
+            throw new IllegalArgumentException("prototype is null.");
+        }
+
+        if (maxSharedSize < 0)
+        {
+            throw new IllegalArgumentException("maxSharedSize is negative.");
+        }
+
+        try
+        {
+            // Keep a private copy in its initial state.
+            mPrototype = ((Digest)prototype.clone()).reset();
+        }
+        catch (CloneNotSupportedException e)
+        {
+            throw new IllegalArgumentException("The prototype does not support cloning.", e);
+        }
+
+        mAlgorithm      = mPrototype.getAlgorithm();
+        mFeatures       = mPrototype.getFeatureBits();
+        mJsonMaxDepth   = mPrototype.getJsonMaxDepth();
+        mMaxSharedSize  = maxSharedSize;
+        mLocal          = new ThreadLocal<Digest[]>() {
+            @Override
+            protected Digest[] initialValue()
+            {
+                return new Digest[1];
+            }
+        };
+        mShared         = new ConcurrentLinkedQueue<Digest>();
+        mSharedSize     = new AtomicInteger();
+        mLocalHitCount  = new LongAdder();
+        mSharedHitCount = new LongAdder();
+        mMissCount      = new LongAdder();
+    }
+
+
+    /**
+     * Constructor with a spec. The maximum number of idle instances
+     * in the shared pool is {@link #DEFAULT_MAX_SHARED_SIZE}.
+     *
+     * @param spec
+     *         Configuration of instances in this pool.
+     *
+     * @throws IllegalArgumentException
+     *         {@code spec} is {@code null}, or the implementation of
+     *         the algorithm does not support cloning.
+     */
+    public DigestPool(DigestSpec spec)
+    {
+        this(spec, DEFAULT_MAX_SHARED_SIZE);
+    }
+
+
+    /**
+     * Constructor with a spec and the maximum number of idle instances
+     * in the shared pool.
+     *
+     * @param spec
+     *         Configuration of instances in this pool.
+     *
+     * @param maxSharedSize
+     *         The maximum number of idle instances in the shared pool.
+     *         Instances released when the shared pool is full are
+     *         discarded.
+     *
+     * @throws IllegalArgumentException
+     *         {@code spec} is {@code null}, the implementation of the
+     *         algorithm does not support cloning, or {@code maxSharedSize}
+     *         is negative.
+     */
+    public DigestPool(DigestSpec spec, int maxSharedSize)
+    {
+        this(createPrototype(spec), maxSharedSize);
+    }
+
+
+    private static Digest createPrototype(DigestSpec spec)
+    {
+        if (spec == null)
+        {
+            throw new IllegalArgumentException("spec is null.");
+        }
+
+        return spec.createDigest();
+    }
+
+
+    /**
+     * Get a pool for the specified algorithm and features.
+     *
+     * <p>
+     * Pools are cached, so this method returns the same pool for the
+     * same combination of an algorithm name and features.
+     * </p>
+     *
+     * @param algorithm
+     *         Algorithm name such as "MD5" and "SHA-1".
+     *
+     * @param features
+     *         Features enabled for instances in the pool. Features not
+     *         contained in the set are disabled.
+     *
+     * @return
+     *         A pool for the combination.
+     *
+     * @throws IllegalArgumentException
+     *         {@code algorithm} or {@code features} is {@code null}.
+     *
+     * @throws NoSuchAlgorithmException
+     *         No provider supports the specified algorithm.
+     */
+    public static DigestPool getInstance(String algorithm, Set<Feature> features) throws NoSuchAlgorithmException
+    {
+        if (algorithm == null)
+        {
+            throw new IllegalArgumentException("algorithm is null.");
+        }
+
+        DigestSpec spec = DigestSpec.getInstance(algorithm).withFeatures(features);
+        String key      = algorithm + "/" + spec.getFeatureBits();
+        DigestPool pool = sPools.get(key);
+
+        if (pool != null)
+        {
+            return pool;
+        }
+
+        pool = new DigestPool(spec);
+
+        DigestPool existing = sPools.putIfAbsent(key, pool);
+
+        return (existing != null) ? existing : pool;
+    }
+
+
+    /**
+     * Get the algorithm name of instances in this pool.
+     *
+     * @return
+     *         Algorithm name.
+     */
+    public String getAlgorithm()
+    {
+        return mAlgorithm;
+    }
+
+
+    /**
+     * Get the maximum number of idle instances in the shared pool.
+     *
+     * @return
+     *         The maximum number of idle instances in the shared pool.
+     */
+    public int getMaxSharedSize()
+    {
+        return mMaxSharedSize;
+    }
+
+
+    /**
+     * Take a {@code Digest} instance from this pool. A new instance
+     * is created if there is no idle instance. The instance should be
+     * returned to the pool by {@link #release(Digest)} after use.
+     *
+     * @return
+     *         A {@code Digest} instance in its initial state.
+     */
+    public Digest acquire()
+    {
+        if (isVirtual(Thread.currentThread()) == false)
+        {
+            Digest[] local  = mLocal.get();
+            Digest   digest = local[0];
+
+            if (digest != null)
+            {
+                local[0] = null;
+                mLocalHitCount.increment();
+
+                return digest;
+            }
+        }
+
+        Digest digest = mShared.poll();
+
+        if (digest != null)
+        {
+            mSharedSize.decrementAndGet();
+            mSharedHitCount.increment();
+
+            return digest;
+        }
+
+        mMissCount.increment();
+
+        return newDigest();
+    }
+
+
+    /**
+     * Return a {@code Digest} instance to this pool. The instance
+     * must not be used after this call.
+     *
+     * @param digest
+     *         An instance obtained by {@link #acquire()}. If {@code null}
+     *         is given, nothing is done.
+     *
+     * @throws IllegalArgumentException
+     *         The algorithm of the instance is different from that of
+     *         this pool.
+     */
+    public void release(Digest digest)
+    {
+        if (digest == null)
+        {
+            return;
+        }
+
+        if (mAlgorithm.equals(digest.getAlgorithm()) == false)
+        {
+            throw new IllegalArgumentException("The algorithm of the digest is different from that of the pool.");
+        }
+
+        // Make the instance ready for the next user.
+        digest.reset().setFeatureBits(mFeatures);
+        digest.setJsonMaxDepth(mJsonMaxDepth);
+
+        if (isVirtual(Thread.currentThread()) == false)
+        {
+            Digest[] local = mLocal.get();
+
+            if (local[0] == null)
+            {
+                local[0] = digest;
+                return;
+            }
+        }
+
+        if (mSharedSize.incrementAndGet() <= mMaxSharedSize)
+        {
+            mShared.offer(digest);
+        }
+        else
+        {
+            // The shared pool is full. Discard the instance.
+            mSharedSize.decrementAndGet();
+        }
+    }
+
+
+    /**
+     * Lease a {@code Digest} instance from this pool. The returned
+     * lease is expected to be used in a try-with-resources statement,
+     * which returns the instance to the pool on exit.
+     *
+     * @return
+     *         A lease of an instance obtained by {@link #acquire()}.
+     */
+    public Lease lease()
+    {
+        return new Lease(this, acquire());
+    }
+
+
+    /**
+     * Get the number of times {@link #acquire()} reused an idle instance.
+     *
+     * @return
+     *         The number of hits of the per-thread cache and the shared pool.
+     */
+    public long getHitCount()
+    {
+        return mLocalHitCount.sum() + mSharedHitCount.sum();
+    }
+
+
+    /**
+     * Get the number of times {@link #acquire()} reused an idle instance
+     * kept in a per-thread cache.
+     *
+     * @return
+     *         The number of hits of per-thread caches.
+     */
+    public long getThreadLocalHitCount()
+    {
+        return mLocalHitCount.sum();
+    }
+
+
+    /**
+     * Get the number of times {@link #acquire()} reused an idle instance
+     * in the shared pool.
+     *
+     * @return
+     *         The number of hits of the shared pool.
+     */
+    public long getSharedHitCount()
+    {
+        return mSharedHitCount.sum();
+    }
+
+
+    /**
+     * Get the number of times {@link #acquire()} created a new instance
+     * because no idle instance was available.
+     *
+     * @return
+     *         The number of misses.
+     */
+    public long getMissCount()
+    {
+        return mMissCount.sum();
+    }
+
+
+    private Digest newDigest()
+    {
+        try
+        {
+            // The prototype is never updated, so concurrent cloning is safe.
+            return (Digest)mPrototype.clone();
+        }
+        catch (CloneNotSupportedException e)
+        {
+            // This won't happen because cloning has been tested.
+            throw new IllegalStateException("Failed to clone the prototype.", e);
+        }
+    }
+
+
+    private static MethodHandle findIsVirtual()
+    {
+        try
+        {
+            return MethodHandles.publicLookup().findVirtual(
+                    Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        }
+        catch (Exception e)
+        {
+            // Virtual threads are not available.
+            return null;
+        }
+    }
+
+
+    /**
+     * Check if the thread is a virtual thread. Instances kept per
+     * thread are not worth it for virtual threads, which are cheap
+     * and not reused.
+     */
+    static boolean isVirtual(Thread thread)
+    {
+        if (IS_VIRTUAL == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            return (boolean)IS_VIRTUAL.invokeExact(thread);
+        }
+        catch (Throwable t)
+        {
+            return false;
+        }
+    }
+}
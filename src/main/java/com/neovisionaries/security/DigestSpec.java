@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.util.EnumSet;
+import java.util.Set;
+import com.neovisionaries.security.Digest.Feature;
+
+
+/**
+ * Immutable configuration of {@link Digest} instances.
+ *
+ * <p>
+ * A spec holds an algorithm, the provider which implements it,
+ * features and the maximum nesting depth of JSONs. The provider is looked up when the spec is created, and
+ * the features are kept as a bitmask, so {@link #createDigest()}
+ * only has to clone a prototype {@code MessageDigest}. Because specs
+ * are immutable, they can be kept in static fields and shared by
+ * threads freely.
+ * </p>
+ *
+ * <pre style="background-color: #EEEEEE; margin-left: 2em; margin-right: 2em; border: 1px solid black;">
+ * <span style="color: darkgreen;">// Created once.</span>
+ * static final DigestSpec SPEC = DigestSpec.{@link #getInstance(String) getInstance}(<span style="color: #990000">"SHA-256"</span>)
+ *     .{@link #withEnabled(Feature, boolean) withEnabled}(Feature.{@link Feature#IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL}, true);
+ *
+ * <span style="color: darkgreen;">// Used by any thread.</span>
+ * String digest = SPEC.{@link #createDigest()}.{@link Digest#updateJson(String) updateJson}(json).{@link Digest#digestAsString() digestAsString()};
+ * </pre>
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+public final class DigestSpec
+{
+    private final MessageDigestFactory.Prototype mPrototype;
+    private final int mFeatures;
+    private final int mJsonMaxDepth;
+
+
+    private DigestSpec(MessageDigestFactory.Prototype prototype, int features, int jsonMaxDepth)
+    {
+        mPrototype    = prototype;
+        mFeatures     = features;
+        mJsonMaxDepth = jsonMaxDepth;
+    }
+
+
+    /**
+     * Get a spec for the specified algorithm with the default features.
+     *
+     * @param algorithm
+     *         Algorithm name such as "MD5" and "SHA-1".
+     *
+     * @return
+     *         A spec.
+     *
+     * @throws IllegalArgumentException
+     *         {@code algorithm} is {@code null}.
+     *
+     * @throws NoSuchAlgorithmException
+     *         No provider supports the specified algorithm.
+     */
+    public static DigestSpec getInstance(String algorithm) throws NoSuchAlgorithmException
+    {
+        checkAlgorithm(algorithm);
+
+        return new DigestSpec(
+                MessageDigestFactory.getPrototype(algorithm), Digest.DEFAULT_FEATURES,
+                Digest.DEFAULT_JSON_MAX_DEPTH);
+    }
+
+
+    /**
+     * Get a spec for the specified algorithm and provider with the
+     * default features.
+     *
+     * @param algorithm
+     *         Algorithm name such as "MD5" and "SHA-1".
+     *
+     * @param provider
+     *         Provider name.
+     *
+     * @return
+     *         A spec.
+     *
+     * @throws IllegalArgumentException
+     *         {@code algorithm} or {@code provider} is {@code null}.
+     *
+     * @throws NoSuchAlgorithmException
+     *         The provider does not support the specified algorithm.
+     *
+     * @throws NoSuchProviderException
+     *         The specified provider is not registered in the security provider list.
+     */
+    public static DigestSpec getInstance(String algorithm, String provider)
+            throws NoSuchAlgorithmException, NoSuchProviderException
+    {
+        checkAlgorithm(algorithm);
+
+        if (provider == null)
+        {
+            throw new IllegalArgumentException("provider is null.");
+        }
+
+        return new DigestSpec(
+                MessageDigestFactory.getPrototype(algorithm, provider), Digest.DEFAULT_FEATURES,
+                Digest.DEFAULT_JSON_MAX_DEPTH);
+    }
+
+
+    /**
+     * Get a spec for the specified algorithm and provider with the
+     * default features.
+     *
+     * @param algorithm
+     *         Algorithm name such as "MD5" and "SHA-1".
+     *
+     * @param provider
+     *         Provider.
+     *
+     * @return
+     *         A spec.
+     *
+     * @throws IllegalArgumentException
+     *         {@code algorithm} or {@code provider} is {@code null}.
+     *
+     * @throws NoSuchAlgorithmException
+     *         The provider does not support the specified algorithm.
+     */
+    public static DigestSpec getInstance(String algorithm, Provider provider) throws NoSuchAlgorithmException
+    {
+        checkAlgorithm(algorithm);
+
+        if (provider == null)
+        {
+            throw new IllegalArgumentException("provider is null.");
+        }
+
+        return new DigestSpec(
+                MessageDigestFactory.getPrototype(algorithm, provider), Digest.DEFAULT_FEATURES,
+                Digest.DEFAULT_JSON_MAX_DEPTH);
+    }
+
+
+    private static void checkAlgorithm(String algorithm)
+    {
+        if (algorithm == null)
+        {
+            throw new IllegalArgumentException("algorithm is null.");
+        }
+    }
+
+
+    /**
+     * Get the algorithm name.
+     *
+     * @return
+     *         Algorithm name.
+     */
+    public String getAlgorithm()
+    {
+        return mPrototype.getAlgorithm();
+    }
+
+
+    /**
+     * Get the provider which implements the algorithm.
+     *
+     * @return
+     *         Provider.
+     */
+    public Provider getProvider()
+    {
+        return mPrototype.getProvider();
+    }
+
+
+    /**
+     * Check if the specified feature is enabled.
+     *
+     * @param feature
+     *         Feature to check.
+     *
+     * @return
+     *         {@code true} if the feature is enabled. Otherwise, {@code false}.
+     */
+    public boolean isEnabled(Feature feature)
+    {
+        return (mFeatures & Digest.mask(feature)) != 0;
+    }
+
+
+    /**
+     * Get the set of enabled features.
+     *
+     * @return
+     *         A new set containing the features that are enabled.
+     */
+    public EnumSet<Feature> getFeatures()
+    {
+        EnumSet<Feature> features = EnumSet.noneOf(Feature.class);
+
+        for (Feature feature : Feature.values())
+        {
+            if (isEnabled(feature))
+            {
+                features.add(feature);
+            }
+        }
+
+        return features;
+    }
+
+
+    /**
+     * Get a spec which is the same as this spec except that the
+     * specified feature is enabled or disabled.
+     *
+     * @param feature
+     *         {@link Feature} to enable or disable.
+     *
+     * @param enabled
+     *         {@code true} to enable the feature.
+     *         {@code false} to disable the feature.
+     *
+     * @return
+     *         A spec with the feature changed. {@code this} object
+     *         is returned if nothing changes.
+     *
+     * @throws IllegalArgumentException
+     *         {@code feature} is {@code null}.
+     */
+    public DigestSpec withEnabled(Feature feature, boolean enabled)
+    {
+        if (feature == null)
+        {
+            throw new IllegalArgumentException("feature is null.");
+        }
+
+        int features = enabled ? (mFeatures | Digest.mask(feature))
+                               : (mFeatures & ~Digest.mask(feature));
+
+        return withFeatureBits(features);
+    }
+
+
+    /**
+     * Get a spec which is the same as this spec except that only the
+     * given features are enabled.
+     *
+     * @param features
+     *         Features to enable. The others are disabled.
+     *
+     * @return
+     *         A spec with the features. {@code this} object is returned
+     *         if nothing changes.
+     *
+     * @throws IllegalArgumentException
+     *         {@code features} is {@code null}.
+     */
+    public DigestSpec withFeatures(Set<Feature> features)
+    {
+        if (features == null)
+        {
+            throw new IllegalArgumentException("features is null.");
+        }
+
+        int bits = 0;
+
+        for (Feature feature : features)
+        {
+            bits |= Digest.mask(feature);
+        }
+
+        return withFeatureBits(bits);
+    }
+
+
+    private DigestSpec withFeatureBits(int features)
+    {
+        if (features == mFeatures)
+        {
+            return this;
+        }
+
+        return new DigestSpec(mPrototype, features, mJsonMaxDepth);
+    }
+
+
+    /**
+     * Get the bits that represent the enabled features.
+     */
+    int getFeatureBits()
+    {
+        return mFeatures;
+    }
+
+
+    /**
+     * Get the maximum nesting depth of JSON arrays and objects which
+     * digests created by this spec accept.
+     *
+     * @return
+     *         The maximum nesting depth.
+     *
+     * @see Digest#getJsonMaxDepth()
+     */
+    public int getJsonMaxDepth()
+    {
+        return mJsonMaxDepth;
+    }
+
+
+    /**
+     * Get a spec which is the same as this spec except the maximum
+     * nesting depth of JSON arrays and objects.
+     *
+     * @param depth
+     *         The maximum nesting depth. {@code "[]"} has the depth 1.
+     *
+     * @return
+     *         A spec with the depth. {@code this} object is returned
+     *         if nothing changes.
+     *
+     * @throws IllegalArgumentException
+     *         {@code depth} is less than 1.
+     *
+     * @see Digest#setJsonMaxDepth(int)
+     */
+    public DigestSpec withJsonMaxDepth(int depth)
+    {
+        if (depth < 1)
+        {
+            throw new IllegalArgumentException("depth is less than 1.");
+        }
+
+        if (depth == mJsonMaxDepth)
+        {
+            return this;
+        }
+
+        return new DigestSpec(mPrototype, mFeatures, depth);
+    }
+
+
+    /**
+     * Create a new {@link Digest} instance configured by this spec.
+     *
+     * <p>
+     * This method can be called from multiple threads concurrently.
+     * The returned instance itself is not thread-safe, as usual.
+     * </p>
+     *
+     * @return
+     *         A new {@code Digest} instance in its initial state.
+     */
+    public Digest createDigest()
+    {
+        return new Digest(mPrototype.create(), mFeatures).setJsonMaxDepth(mJsonMaxDepth);
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return getAlgorithm() + "/" + getProvider().getName() + getFeatures();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+/**
+ * Updater of a {@link Digest} with objects of a certain type.
+ *
+ * <p>
+ * An implementation registered by {@link Digest#registerUpdater(Class,
+ * DigestUpdater) Digest.registerUpdater} is used by {@link
+ * Digest#update(Object)} when the class of the given object is the
+ * registered type or its subtype. This enables domain types to
+ * contribute to a digest directly without being converted to
+ * {@code String} first.
+ * </p>
+ *
+ * <pre style="background-color: #EEEEEE; margin-left: 2em; margin-right: 2em; border: 1px solid black;">
+ * Digest.registerUpdater(Point.class, new DigestUpdater&lt;Point&gt;() {
+ *     public void update(Digest digest, Point input) {
+ *         digest.update(input.x).update(input.y);
+ *     }
+ * });
+ * </pre>
+ *
+ * @param <T>
+ *         The type of objects which this updater handles.
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+public interface DigestUpdater<T>
+{
+    /**
+     * Update the digest with the given object.
+     *
+     * @param digest
+     *         The digest to update.
+     *
+     * @param input
+     *         Input data. Never {@code null}.
+     */
+    void update(Digest digest, T input);
+}
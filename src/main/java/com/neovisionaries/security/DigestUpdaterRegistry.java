@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Registry of {@link DigestUpdater}s used by {@link Digest#update(Object)}.
+ *
+ * <p>
+ * The updater for a class is resolved only once and cached by
+ * {@link ClassValue}. Registering or unregistering an updater
+ * replaces the cache as a whole.
+ * </p>
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+final class DigestUpdaterRegistry
+{
+    /**
+     * Updaters for the types supported by {@link Digest#update(Object)}
+     * out of the box. The order of the constants is the order in which
+     * the types are checked.
+     */
+    private static enum BuiltinUpdater implements DigestUpdater<Object>
+    {
+        STRING(String.class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((String)input);
+            }
+        },
+
+        STRING_ARRAY(String[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((String[])input);
+            }
+        },
+
+        CHARACTER(Character.class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((Character)input);
+            }
+        },
+
+        CHARACTER_ARRAY(Character[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((Character[])input);
+            }
+        },
+
+        BOOLEAN(Boolean.class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((Boolean)input);
+            }
+        },
+
+        BOOLEAN_PRIMITIVE_ARRAY(boolean[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((boolean[])input);
+            }
+        },
+
+        BOOLEAN_ARRAY(Boolean[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((Boolean[])input);
+            }
+        },
+
+        NUMBER(Number.class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((Number)input);
+            }
+        },
+
+        BYTE_PRIMITIVE_ARRAY(byte[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((byte[])input);
+            }
+        },
+
+        BYTE_ARRAY(Byte[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((Byte[])input);
+            }
+        },
+
+        BYTE_BUFFER(ByteBuffer.class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((ByteBuffer)input);
+            }
+        },
+
+        CHAR_ARRAY(char[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((char[])input);
+            }
+        },
+
+        DOUBLE_PRIMITIVE_ARRAY(double[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((double[])input);
+            }
+        },
+
+        DOUBLE_ARRAY(Double[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((Double[])input);
+            }
+        },
+
+        FLOAT_PRIMITIVE_ARRAY(float[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((float[])input);
+            }
+        },
+
+        FLOAT_ARRAY(Float[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((Float[])input);
+            }
+        },
+
+        INT_ARRAY(int[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((int[])input);
+            }
+        },
+
+        INTEGER_ARRAY(Integer[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((Integer[])input);
+            }
+        },
+
+        LONG_PRIMITIVE_ARRAY(long[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((long[])input);
+            }
+        },
+
+        LONG_ARRAY(Long[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((Long[])input);
+            }
+        },
+
+        SHORT_PRIMITIVE_ARRAY(short[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((short[])input);
+            }
+        },
+
+        SHORT_ARRAY(Short[].class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((Short[])input);
+            }
+        },
+
+        ITERABLE(Iterable.class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+                digest.update((Iterable<?>)input);
+            }
+        },
+
+        /**
+         * Objects of unsupported classes are ignored.
+         */
+        NONE(Object.class)
+        {
+            @Override
+            public void update(Digest digest, Object input)
+            {
+            }
+        };
+
+
+        private final Class<?> mType;
+
+
+        private BuiltinUpdater(Class<?> type)
+        {
+            mType = type;
+        }
+    }
+
+
+    /**
+     * Cache of resolved updaters.
+     */
+    private static final class Cache extends ClassValue<DigestUpdater<Object>>
+    {
+        private final Map<Class<?>, DigestUpdater<Object>> mUpdaters;
+
+
+        Cache(Map<Class<?>, DigestUpdater<Object>> updaters)
+        {
+            mUpdaters = updaters;
+        }
+
+
+        @Override
+        protected DigestUpdater<Object> computeValue(Class<?> type)
+        {
+            // An updater registered for the class itself.
+            DigestUpdater<Object> updater = mUpdaters.get(type);
+
+            if (updater != null)
+            {
+                return updater;
+            }
+
+            // An updater registered for a super type. The one which
+            // was registered first wins.
+            for (Map.Entry<Class<?>, DigestUpdater<Object>> entry : mUpdaters.entrySet())
+            {
+                if (entry.getKey().isAssignableFrom(type))
+                {
+                    return entry.getValue();
+                }
+            }
+
+            // Built-in updaters.
+            for (BuiltinUpdater builtin : BuiltinUpdater.values())
+            {
+                if (builtin.mType.isAssignableFrom(type))
+                {
+                    return builtin;
+                }
+            }
+
+            // This won't happen because NONE accepts any class.
+            return BuiltinUpdater.NONE;
+        }
+    }
+
+
+    /**
+     * Registered updaters. Replaced (not modified) on every change.
+     */
+    private static Map<Class<?>, DigestUpdater<Object>> sUpdaters =
+            Collections.emptyMap();
+
+
+    /**
+     * The cache which reflects {@link #sUpdaters}.
+     */
+    private static volatile Cache sCache = new Cache(sUpdaters);
+
+
+    private DigestUpdaterRegistry()
+    {
+    }
+
+
+    /**
+     * Get the updater for the specified class.
+     *
+     * @param type
+     *         The class of an object given to {@link Digest#update(Object)}.
+     *
+     * @return
+     *         The updater for the class. Never {@code null}.
+     */
+    static DigestUpdater<Object> get(Class<?> type)
+    {
+        return sCache.get(type);
+    }
+
+
+    /**
+     * Register an updater for the specified type.
+     */
+    @SuppressWarnings("unchecked")
+    static synchronized void register(Class<?> type, DigestUpdater<?> updater)
+    {
+        Map<Class<?>, DigestUpdater<Object>> updaters =
+                new LinkedHashMap<Class<?>, DigestUpdater<Object>>(sUpdaters);
+
+        updaters.put(type, (DigestUpdater<Object>)updater);
+
+        replace(updaters);
+    }
+
+
+    /**
+     * Unregister the updater for the specified type.
+     */
+    static synchronized void unregister(Class<?> type)
+    {
+        if (sUpdaters.containsKey(type) == false)
+        {
+            return;
+        }
+
+        Map<Class<?>, DigestUpdater<Object>> updaters =
+                new LinkedHashMap<Class<?>, DigestUpdater<Object>>(sUpdaters);
+
+        updaters.remove(type);
+
+        replace(updaters);
+    }
+
+
+    private static void replace(Map<Class<?>, DigestUpdater<Object>> updaters)
+    {
+        sUpdaters = Collections.unmodifiableMap(updaters);
+        sCache    = new Cache(sUpdaters);
+    }
+}
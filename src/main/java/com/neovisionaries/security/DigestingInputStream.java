@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Input stream which updates a {@link Digest} with the data read
+ * through it.
+ *
+ * <p>
+ * Unlike {@link java.security.DigestInputStream}, this class holds
+ * a {@link Digest}, so the result can be obtained by the fluent API
+ * such as {@link Digest#digestAsString()}, and {@link Digest.Feature
+ * features} of the digest are available. Bytes skipped by {@link
+ * #skip(long)} are read and given to the digest, too, so the digest
+ * always covers all the data consumed from the underlying stream.
+ * </p>
+ *
+ * <pre style="background-color: #EEEEEE; margin-left: 2em; margin-right: 2em; border: 1px solid black;">
+ * DigestingInputStream in = new DigestingInputStream(upload, Digest.{@link Digest#getInstanceSHA256() getInstanceSHA256()});
+ *
+ * Files.copy(in, path);
+ *
+ * String checksum = in.{@link #getDigest()}.{@link Digest#digestAsString() digestAsString()};
+ * </pre>
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+public class DigestingInputStream extends FilterInputStream
+{
+    /**
+     * The size of the buffer used to read skipped bytes.
+     */
+    private static final int SKIP_BUFFER_SIZE = 8192;
+
+
+    private final Digest mDigest;
+    private byte[] mSkipBuffer;
+
+
+    /**
+     * Constructor.
+     *
+     * @param in
+     *         The underlying input stream.
+     *
+     * @param digest
+     *         The digest to update with the data read through this stream.
+     *
+     * @throws IllegalArgumentException
+     *         {@code in} or {@code digest} is {@code null}.
+     */
+    public DigestingInputStream(InputStream in, Digest digest)
+    {
+        super(in);
+
+        if (in == null)
+        {
+            throw new IllegalArgumentException("in is null.");
+        }
+
+        if (digest == null)
+        {
+            throw new IllegalArgumentException("digest is null.");
+        }
+
+        mDigest = digest;
+    }
+
+
+    /**
+     * Get the digest updated with the data read through this stream.
+     *
+     * @return
+     *         The digest given to the constructor.
+     */
+    public Digest getDigest()
+    {
+        return mDigest;
+    }
+
+
+    @Override
+    public int read() throws IOException
+    {
+        int b = in.read();
+
+        if (b >= 0)
+        {
+            mDigest.update((byte)b);
+        }
+
+        return b;
+    }
+
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int count = in.read(b, off, len);
+
+        if (count > 0)
+        {
+            mDigest.update(b, off, count);
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Skip bytes. The skipped bytes are read from the underlying
+     * stream and given to the digest.
+     */
+    @Override
+    public long skip(long n) throws IOException
+    {
+        if (n <= 0)
+        {
+            return 0;
+        }
+
+        if (mSkipBuffer == null)
+        {
+            mSkipBuffer = new byte[SKIP_BUFFER_SIZE];
+        }
+
+        long remaining = n;
+
+        while (remaining > 0)
+        {
+            int count = read(mSkipBuffer, 0, (int)Math.min(remaining, mSkipBuffer.length));
+
+            if (count < 0)
+            {
+                break;
+            }
+
+            remaining -= count;
+        }
+
+        return n - remaining;
+    }
+
+
+    /**
+     * This method returns {@code false} because re-reading data would
+     * update the digest twice.
+     */
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+
+    /**
+     * This method does nothing.
+     */
+    @Override
+    public void mark(int readlimit)
+    {
+    }
+
+
+    /**
+     * This method always throws an {@code IOException}.
+     */
+    @Override
+    public void reset() throws IOException
+    {
+        throw new IOException("mark/reset not supported");
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Output stream which updates a {@link Digest} with the data written
+ * through it.
+ *
+ * <p>
+ * Unlike {@link java.security.DigestOutputStream}, this class holds
+ * a {@link Digest}, so the result can be obtained by the fluent API
+ * such as {@link Digest#digestAsString()}, and {@link Digest.Feature
+ * features} of the digest are available. Data given to {@link
+ * #write(byte[], int, int)} is passed to the underlying stream and
+ * to {@link Digest#update(byte[], int, int)} as a whole.
+ * </p>
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+public class DigestingOutputStream extends FilterOutputStream
+{
+    private final Digest mDigest;
+
+
+    /**
+     * Constructor.
+     *
+     * @param out
+     *         The underlying output stream.
+     *
+     * @param digest
+     *         The digest to update with the data written through this stream.
+     *
+     * @throws IllegalArgumentException
+     *         {@code out} or {@code digest} is {@code null}.
+     */
+    public DigestingOutputStream(OutputStream out, Digest digest)
+    {
+        super(out);
+
+        if (out == null)
+        {
+            throw new IllegalArgumentException("out is null.");
+        }
+
+        if (digest == null)
+        {
+            throw new IllegalArgumentException("digest is null.");
+        }
+
+        mDigest = digest;
+    }
+
+
+    /**
+     * Get the digest updated with the data written through this stream.
+     *
+     * @return
+     *         The digest given to the constructor.
+     */
+    public Digest getDigest()
+    {
+        return mDigest;
+    }
+
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        out.write(b);
+
+        mDigest.update((byte)b);
+    }
+
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        // FilterOutputStream writes the bytes one by one.
+        out.write(b, off, len);
+
+        mDigest.update(b, off, len);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+
+/**
+ * Readable channel which updates a {@link Digest} with the data read
+ * through it.
+ *
+ * <p>
+ * The bytes which the underlying channel puts into the destination
+ * buffer are given to {@link Digest#update(ByteBuffer)} without
+ * changing the position or the limit of the destination buffer.
+ * </p>
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+public class DigestingReadableByteChannel implements ReadableByteChannel
+{
+    private final ReadableByteChannel mChannel;
+    private final Digest mDigest;
+
+
+    /**
+     * Constructor.
+     *
+     * @param channel
+     *         The underlying channel.
+     *
+     * @param digest
+     *         The digest to update with the data read through this channel.
+     *
+     * @throws IllegalArgumentException
+     *         {@code channel} or {@code digest} is {@code null}.
+     */
+    public DigestingReadableByteChannel(ReadableByteChannel channel, Digest digest)
+    {
+        if (channel == null)
+        {
+            throw new IllegalArgumentException("channel is null.");
+        }
+
+        if (digest == null)
+        {
+            throw new IllegalArgumentException("digest is null.");
+        }
+
+        mChannel = channel;
+        mDigest  = digest;
+    }
+
+
+    /**
+     * Get the digest updated with the data read through this channel.
+     *
+     * @return
+     *         The digest given to the constructor.
+     */
+    public Digest getDigest()
+    {
+        return mDigest;
+    }
+
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException
+    {
+        int position = dst.position();
+        int count    = mChannel.read(dst);
+
+        if (count > 0)
+        {
+            ByteBuffer read = dst.duplicate();
+            read.limit(position + count);
+            read.position(position);
+
+            mDigest.update(read);
+        }
+
+        return count;
+    }
+
+
+    @Override
+    public boolean isOpen()
+    {
+        return mChannel.isOpen();
+    }
+
+
+    @Override
+    public void close() throws IOException
+    {
+        mChannel.close();
+    }
+}
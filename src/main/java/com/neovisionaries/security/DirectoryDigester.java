@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Engine which computes the digest of every regular file under a
+ * directory in parallel.
+ *
+ * <pre style="background-color: #EEEEEE; margin-left: 2em; margin-right: 2em; border: 1px solid black;">
+ * DirectoryDigester digester = new DirectoryDigester(
+ *     DigestSpec.{@link DigestSpec#getInstance(String) getInstance}(<span style="color: #990000">"SHA-256"</span>), ForkJoinPool.commonPool());
+ *
+ * <span style="color: darkgreen;">// Relative paths such as "lib/a.jar", in ascending order.</span>
+ * SortedMap&lt;String, byte[]&gt; manifest = digester.{@link #digest(Path) digest}(root);
+ * </pre>
+ *
+ * <p>
+ * Files are hashed on a {@link ForkJoinPool} by {@link Digest}
+ * instances taken from a {@link DigestPool}, so each worker reuses
+ * its instance. Files whose size is equal to or larger than the
+ * {@linkplain #setLargeFileThreshold(long) large file threshold}
+ * are hashed one by one in descending order of size, and they are
+ * scheduled first so that a few huge files do not run alone at the
+ * end. Smaller files are grouped into batches to reduce the cost of
+ * scheduling.
+ * </p>
+ *
+ * <p>
+ * Symbolic links are not followed. An instance of this class can be
+ * used by multiple threads concurrently as long as its configuration
+ * is not changed.
+ * </p>
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+public class DirectoryDigester
+{
+    /**
+     * The default value of the large file threshold.
+     */
+    public static final long DEFAULT_LARGE_FILE_THRESHOLD = 4 * 1024 * 1024;
+
+
+    /**
+     * The total size of files in one batch of small files.
+     */
+    private static final long BATCH_BYTES = 1024 * 1024;
+
+
+    /**
+     * The maximum number of files in one batch of small files.
+     */
+    private static final int BATCH_FILES = 128;
+
+
+    /**
+     * A regular file found in the directory tree.
+     */
+    private static final class Entry
+    {
+        final Path mPath;
+        final long mSize;
+        final int mIndex;
+
+
+        Entry(Path path, long size, int index)
+        {
+            mPath  = path;
+            mSize  = size;
+            mIndex = index;
+        }
+    }
+
+
+    /**
+     * Task which hashes files with one {@code Digest} instance.
+     */
+    private final class Batch extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Entry> mEntries;
+        private final byte[][] mResults;
+
+
+        Batch(List<Entry> entries, byte[][] results)
+        {
+            mEntries = entries;
+            mResults = results;
+        }
+
+
+        @Override
+        protected void compute()
+        {
+            Digest digest = mPool.acquire();
+
+            try
+            {
+                for (Entry entry : mEntries)
+                {
+                    mResults[entry.mIndex] = digest.update(entry.mPath).digest();
+                }
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            finally
+            {
+                mPool.release(digest);
+            }
+        }
+    }
+
+
+    private final DigestPool mPool;
+    private final ForkJoinPool mForkJoinPool;
+    private long mLargeFileThreshold = DEFAULT_LARGE_FILE_THRESHOLD;
+
+
+    /**
+     * Constructor with a spec. Files are hashed on {@link
+     * ForkJoinPool#commonPool()}.
+     *
+     * @param spec
+     *         Configuration of {@link Digest} instances used to hash files.
+     *
+     * @throws IllegalArgumentException
+     *         {@code spec} is {@code null}.
+     */
+    public DirectoryDigester(DigestSpec spec)
+    {
+        this(spec, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Constructor with a spec and a fork/join pool.
+     *
+     * @param spec
+     *         Configuration of {@link Digest} instances used to hash files.
+     *
+     * @param forkJoinPool
+     *         The pool on which files are hashed.
+     *
+     * @throws IllegalArgumentException
+     *         {@code spec} or {@code forkJoinPool} is {@code null}.
+     */
+    public DirectoryDigester(DigestSpec spec, ForkJoinPool forkJoinPool)
+    {
+        if (forkJoinPool == null)
+        {
+            throw new IllegalArgumentException("forkJoinPool is null.");
+        }
+
+        mPool         = new DigestPool(spec);
+        mForkJoinPool = forkJoinPool;
+    }
+
+
+    /**
+     * Get the large file threshold.
+     *
+     * @return
+     *         The size in bytes at or above which files are scheduled
+     *         one by one.
+     */
+    public long getLargeFileThreshold()
+    {
+        return mLargeFileThreshold;
+    }
+
+
+    /**
+     * Set the large file threshold. The default value is {@link
+     * #DEFAULT_LARGE_FILE_THRESHOLD}.
+     *
+     * @param threshold
+     *         The size in bytes at or above which files are scheduled
+     *         one by one.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code threshold} is negative.
+     */
+    public DirectoryDigester setLargeFileThreshold(long threshold)
+    {
+        if (threshold < 0)
+        {
+            throw new IllegalArgumentException("threshold is negative.");
+        }
+
+        mLargeFileThreshold = threshold;
+
+        return this;
+    }
+
+
+    /**
+     * Compute the digest of every regular file under the directory.
+     *
+     * @param root
+     *         The directory to walk.
+     *
+     * @return
+     *         A manifest whose keys are paths relative to {@code root}
+     *         with {@code '/'} as the separator, in ascending order,
+     *         and whose values are the digests of the files.
+     *
+     * @throws IllegalArgumentException
+     *         {@code root} is {@code null}.
+     *
+     * @throws IOException
+     *         Failed to walk the tree or to read a file.
+     */
+    public SortedMap<String, byte[]> digest(Path root) throws IOException
+    {
+        if (root == null)
+        {
+            throw new IllegalArgumentException("root is null.");
+        }
+
+        List<Entry> entries = list(root);
+        byte[][] results = new byte[entries.size()][];
+        final List<ForkJoinTask<?>> tasks = schedule(entries, results);
+
+        try
+        {
+            mForkJoinPool.submit(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute()
+                {
+                    invokeInOrder(tasks);
+                }
+            }).get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing files.", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw unwrap(e.getCause());
+        }
+
+        SortedMap<String, byte[]> manifest = new TreeMap<String, byte[]>();
+
+        for (Entry entry : entries)
+        {
+            manifest.put(toName(root.relativize(entry.mPath)), results[entry.mIndex]);
+        }
+
+        return manifest;
+    }
+
+
+    /**
+     * Run the tasks in the current worker and wait for them. Idle
+     * workers steal the oldest forked tasks first, so the tasks are
+     * forked in the order of the list, which makes the workers start
+     * them in that order. {@code ForkJoinTask.invokeAll} is not used
+     * because it forks the tasks from the end of the list. The current
+     * worker runs the first task itself, and then the tasks that have
+     * not been stolen.
+     */
+    static void invokeInOrder(List<? extends ForkJoinTask<?>> tasks)
+    {
+        int size = tasks.size();
+
+        if (size == 0)
+        {
+            return;
+        }
+
+        for (int i = 1; i < size; ++i)
+        {
+            tasks.get(i).fork();
+        }
+
+        tasks.get(0).invoke();
+
+        // Join the newest first, so the current worker can take the
+        // tasks that are still in its queue.
+        for (int i = size - 1; 0 < i; --i)
+        {
+            tasks.get(i).join();
+        }
+    }
+
+
+    private static List<Entry> list(Path root) throws IOException
+    {
+        final List<Entry> entries = new ArrayList<Entry>();
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+            {
+                if (attrs.isRegularFile())
+                {
+                    entries.add(new Entry(file, attrs.size(), entries.size()));
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return entries;
+    }
+
+
+    /**
+     * Create tasks. Large files come first in descending order of
+     * size, and then batches of small files.
+     */
+    private List<ForkJoinTask<?>> schedule(List<Entry> entries, byte[][] results)
+    {
+        List<Entry> large = new ArrayList<Entry>();
+        List<Entry> small = new ArrayList<Entry>();
+
+        for (Entry entry : entries)
+        {
+            if (entry.mSize >= mLargeFileThreshold)
+            {
+                large.add(entry);
+            }
+            else
+            {
+                small.add(entry);
+            }
+        }
+
+        Collections.sort(large, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2)
+            {
+                return Long.compare(e2.mSize, e1.mSize);
+            }
+        });
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+
+        for (Entry entry : large)
+        {
+            tasks.add(new Batch(Collections.singletonList(entry), results));
+        }
+
+        List<Entry> batch = new ArrayList<Entry>();
+        long bytes = 0;
+
+        for (Entry entry : small)
+        {
+            batch.add(entry);
+            bytes += entry.mSize;
+
+            if (bytes >= BATCH_BYTES || batch.size() >= BATCH_FILES)
+            {
+                tasks.add(new Batch(batch, results));
+                batch = new ArrayList<Entry>();
+                bytes = 0;
+            }
+        }
+
+        if (batch.size() != 0)
+        {
+            tasks.add(new Batch(batch, results));
+        }
+
+        return tasks;
+    }
+
+
+    private static String toName(Path relative)
+    {
+        StringBuilder builder = new StringBuilder();
+
+        for (Path element : relative)
+        {
+            if (builder.length() != 0)
+            {
+                builder.append('/');
+            }
+
+            builder.append(element.toString());
+        }
+
+        return builder.toString();
+    }
+
+
+    private static IOException unwrap(Throwable cause)
+    {
+        if (cause instanceof UncheckedIOException)
+        {
+            return ((UncheckedIOException)cause).getCause();
+        }
+
+        if (cause instanceof RuntimeException)
+        {
+            throw (RuntimeException)cause;
+        }
+
+        if (cause instanceof Error)
+        {
+            throw (Error)cause;
+        }
+
+        return new IOException(cause);
+    }
+}
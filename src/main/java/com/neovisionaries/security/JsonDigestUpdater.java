@@ -1,413 +1,1387 @@
-/*
- * Copyright (C) 2014-2015 Neo Visionaries Inc.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *     http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package com.neovisionaries.security;
-
-
-import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_ARRAY;
-import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_OBJECT;
-import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_STRING;
-import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_FALSE;
-import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL;
-import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_ZERO;
-import static com.neovisionaries.security.Digest.Feature.SORT_JSON_OBJECT_ENTRY_KEYS;
-import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-
-/**
- * Implementation of {@link Digest#updateJson(String)}.
- *
- * @author Takahiko Kawasaki
- *
- * @since 1.2
- */
-class JsonDigestUpdater
-{
-    private Digest digest;
-    private StringBuilder path;
-    private boolean ignoreNull;
-    private boolean ignoreFalse;
-    private boolean ignoreZero;
-    private boolean ignoreEmptyString;
-    private boolean ignoreEmptyArray;
-    private boolean ignoreEmptyObject;
-    private boolean sortKeys;
-
-
-    public Digest update(Digest digest, String json) throws IOException
-    {
-        // Set the digest to update.
-        this.digest = digest;
-
-        // Initialize the path.
-        this.path = new StringBuilder();
-
-        // Copy configuration.
-        this.ignoreNull        = digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL);
-        this.ignoreFalse       = digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_FALSE);
-        this.ignoreZero        = digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_ZERO);
-        this.ignoreEmptyString = digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_STRING);
-        this.ignoreEmptyArray  = digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_ARRAY);
-        this.ignoreEmptyObject = digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_OBJECT);
-        this.sortKeys          = digest.isEnabled(SORT_JSON_OBJECT_ENTRY_KEYS);
-
-        // Convert JSON to a node tree.
-        JsonNode root = createTree(json);
-
-        // Path start
-        mark("P");
-
-        // Traverse the node tree.
-        update(root);
-
-        // Path end
-        mark("p");
-
-        // Finally, update the digest with 'path' in order to prevent
-        // different JSONs from generating the same digest accidentally.
-        digest.update(path.toString());
-
-        return digest;
-    }
-
-
-    private JsonNode createTree(String json) throws IOException
-    {
-        return createObjectMapper().readTree(json);
-    }
-
-
-    private ObjectMapper createObjectMapper()
-    {
-        ObjectMapper mapper = new ObjectMapper();
-
-        mapper.configure(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS, true);
-
-        return mapper;
-    }
-
-
-    private void mark(String mark)
-    {
-        path.append(mark);
-    }
-
-
-    private void update(JsonNode node)
-    {
-        if (node.isArray())
-        {
-            updateArray(node);
-        }
-        else if (node.isObject())
-        {
-            updateObject(node);
-        }
-        else if (node.isBoolean())
-        {
-            updateBoolean(node);
-        }
-        else if (node.isNumber())
-        {
-            updateNumber(node);
-        }
-        else if (node.isTextual())
-        {
-            updateText(node);
-        }
-        else if (node.isNull())
-        {
-            updateNull(node);
-        }
-        else if (node.isBinary())
-        {
-            // Probably, this won't happen.
-            updateBinary(node);
-        }
-    }
-
-
-    private void updateArray(JsonNode node)
-    {
-        // Array start.
-        mark("A");
-
-        // For each element.
-        for (JsonNode element : node)
-        {
-            // Array element start.
-            mark("E");
-
-            // Update the digest with the element.
-            update(element);
-
-            // Array element end.
-            mark("e");
-        }
-
-        // Array end.
-        mark("a");
-    }
-
-
-    private void updateObject(JsonNode node)
-    {
-        // Object start.
-        mark("O");
-
-        // Field names.
-        List<String> names = getFieldNames(node);
-
-        // For each field name.
-        for (String name : names)
-        {
-            // Get the value of the field.
-            JsonNode value = node.findValue(name);
-
-            // Update the digest with the pair of name and value.
-            updateObjectEntry(name, value);
-        }
-
-        // Object end.
-        mark("o");
-    }
-
-
-    private void updateObjectEntry(String name, JsonNode value)
-    {
-        if (shouldIgnore(value))
-        {
-            // Ignore this entry.
-            return;
-        }
-
-        // Key start.
-        mark("K");
-
-        // Update the digest with the name.
-        digest.update(name);
-
-        // Key end and Value start.
-        mark("kV");
-
-        // Update the digest with the value.
-        update(value);
-
-        // Value end.
-        mark("v");
-    }
-
-
-    private boolean shouldIgnore(JsonNode value)
-    {
-        if (ignoreNull && value.isNull())
-        {
-            // The value of the field is null. Ignore this entry.
-            return true;
-        }
-
-        if (ignoreFalse && value.isBoolean())
-        {
-            // Ignore this entry if its value is false.
-            return value.asBoolean() == false;
-        }
-
-        if (ignoreZero && value.isNumber())
-        {
-            // Ignore this entry if its value is zero.
-            return isZero(value);
-        }
-
-        if (ignoreEmptyString && value.isTextual())
-        {
-            // Ignore this entry if its value is an empty string.
-            return value.textValue().length() == 0;
-        }
-
-        if (ignoreEmptyArray && value.isArray())
-        {
-            // Ignore this entry if its value is an empty array.
-            return value.size() == 0;
-        }
-
-        if (ignoreEmptyObject && value.isObject())
-        {
-            // Ignore this entry if its value is an empty object.
-            return value.size() == 0;
-        }
-
-        // Should not ignore.
-        return false;
-    }
-
-
-    private boolean isZero(JsonNode value)
-    {
-        // int
-        if (value.isInt() && value.intValue() == 0)
-        {
-            return true;
-        }
-
-        // long
-        if (value.isLong() && value.longValue() == 0)
-        {
-            return true;
-        }
-
-        // short
-        if (value.isShort() && value.shortValue() == 0)
-        {
-            return true;
-        }
-
-        // float
-        if (value.isFloat() && value.floatValue() == 0.0F)
-        {
-            return true;
-        }
-
-        // double
-        if (value.isDouble() && value.doubleValue() == 0.0)
-        {
-            return true;
-        }
-
-        // BigInteger
-        if (value.isBigInteger() && value.bigIntegerValue().equals(BigInteger.ZERO))
-        {
-            return true;
-        }
-
-        // BigDecimal
-        if (value.isBigDecimal() && value.decimalValue().equals(BigDecimal.ZERO))
-        {
-            return true;
-        }
-
-        return false;
-    }
-
-
-    private List<String> getFieldNames(JsonNode node)
-    {
-        // Generate a list of field names.
-        List<String> list = iteratorToList(node.fieldNames());
-
-        if (sortKeys)
-        {
-            // Sort on field names.
-            Collections.sort(list);
-        }
-
-        return list;
-    }
-
-
-    private <TElement> List<TElement> iteratorToList(Iterator<TElement> iterator)
-    {
-        List<TElement> list = new ArrayList<TElement>();
-
-        while (iterator.hasNext())
-        {
-            list.add(iterator.next());
-        }
-
-        return list;
-    }
-
-
-    private void updateBoolean(JsonNode node)
-    {
-        // Boolean start.
-        mark("B");
-
-        digest.update(node.asBoolean());
-
-        // "Boolean end.
-        mark("b");
-    }
-
-
-    private void updateNumber(JsonNode node)
-    {
-        // Number start.
-        mark("N");
-
-        // Numbers contribute to the digest as String to make it
-        // easy to implement JsonDigestUpdater equivalent for other
-        // non-Java platforms.
-        //
-        // Note that BigDecimal.toString() is used for floating point
-        // numbers because USE_BIG_DECIMAL_FOR_FLOATS is enabled.
-        digest.update(node.toString());
-
-        // Number end.
-        mark("n");
-    }
-
-
-    private void updateText(JsonNode node)
-    {
-        // Text start.
-        mark("T");
-
-        digest.update(node.asText());
-
-        // Text end.
-        mark("t");
-    }
-
-
-    private void updateNull(JsonNode node)
-    {
-        // Null start.
-        mark("<");
-
-        digest.update("NULL");
-
-        // Null end.
-        mark(">");
-    }
-
-
-    private void updateBinary(JsonNode node)
-    {
-        // Binary start.
-        mark("[");
-
-        try
-        {
-            digest.update(node.binaryValue());
-        }
-        catch (IOException e)
-        {
-            // This won't happen because updateBinary(JsonNode)
-            // is called only when node.isBinary() returns true.
-        }
-
-        // Binary end.
-        mark("]");
-    }
-}
+/*
+ * Copyright (C) 2014-2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_ARRAY;
+import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_OBJECT;
+import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_STRING;
+import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_FALSE;
+import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL;
+import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_ZERO;
+import static com.neovisionaries.security.Digest.Feature.SORT_JSON_OBJECT_ENTRY_KEYS;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+
+/**
+ * Implementation of {@link Digest#updateJson(String)} and its overloads.
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.2
+ */
+class JsonDigestUpdater
+{
+    /**
+     * The maximum number of bytes of structural marks kept in memory.
+     */
+    private static final int MARKS_SIZE = 8 * 1024;
+
+
+    /**
+     * The initial size of the work stack. A stack grown larger than
+     * {@link #MAX_RETAINED_STACK_SIZE} is not kept after use.
+     */
+    private static final int INITIAL_STACK_SIZE = 16;
+    private static final int MAX_RETAINED_STACK_SIZE = 1024;
+
+
+    /**
+     * The mapper for the default maximum depth. An {@code ObjectMapper}
+     * is costly to create, and its factory recycles buffers and symbol
+     * tables across parsers. It is never reconfigured after creation,
+     * so it can be shared by threads.
+     */
+    private static final ObjectMapper DEFAULT_MAPPER =
+            createObjectMapper(Digest.DEFAULT_JSON_MAX_DEPTH);
+
+
+    /**
+     * The maximum number of mappers cached for custom maximum depths.
+     * Applications use only a few depths, and the limit keeps the
+     * cache small even if many depths are used.
+     */
+    private static final int MAX_CUSTOM_MAPPERS = 16;
+
+
+    /**
+     * Mappers for custom maximum depths, shared by threads in the
+     * same way as {@link #DEFAULT_MAPPER}. Updaters created for
+     * virtual threads and nested calls use them too.
+     */
+    private static final ConcurrentMap<Integer, ObjectMapper> sCustomMappers =
+            new ConcurrentHashMap<Integer, ObjectMapper>();
+
+
+    /**
+     * Updaters reused by (platform) threads.
+     */
+    private static final ThreadLocal<JsonDigestUpdater> sLocal = new ThreadLocal<JsonDigestUpdater>() {
+        @Override
+        protected JsonDigestUpdater initialValue()
+        {
+            return new JsonDigestUpdater();
+        }
+    };
+
+
+    /**
+     * Source of a JSON.
+     */
+    private static abstract class Source
+    {
+        /**
+         * Create a parser which reads the JSON from the beginning.
+         */
+        abstract JsonParser createParser(JsonFactory factory) throws IOException;
+
+
+        /**
+         * Check if {@link #createParser(JsonFactory)} can be called
+         * more than once. The streaming mode requires it.
+         */
+        boolean isReplayable()
+        {
+            return true;
+        }
+
+
+        /**
+         * Release the parser created by {@link #createParser(JsonFactory)}.
+         */
+        void release(JsonParser parser) throws IOException
+        {
+            parser.close();
+        }
+    }
+
+
+    /**
+     * Comparator to sort fields of a JSON object on their names.
+     */
+    private static final Comparator<Map.Entry<String, JsonNode>> FIELD_NAME_COMPARATOR =
+        new Comparator<Map.Entry<String, JsonNode>>() {
+            @Override
+            public int compare(Map.Entry<String, JsonNode> field1, Map.Entry<String, JsonNode> field2)
+            {
+                return field1.getKey().compareTo(field2.getKey());
+            }
+        };
+
+
+    private boolean inUse;
+    private ObjectMapper mapper;
+    private Digest digest;
+    private final byte[] marks = new byte[MARKS_SIZE];
+    private int markLength;
+    private boolean marksOverflowed;
+    private boolean replaying;
+    private boolean ignoreNull;
+    private boolean ignoreFalse;
+    private boolean ignoreZero;
+    private boolean ignoreEmptyString;
+    private boolean ignoreEmptyArray;
+    private boolean ignoreEmptyObject;
+    private boolean sortKeys;
+    private int maxDepth;
+
+    // Work stack of the containers being traversed. An element of
+    // 'containers' is true for an object and false for an array. The
+    // iterators are used only by the tree-based processing.
+    private boolean[] containers = new boolean[INITIAL_STACK_SIZE];
+    private Iterator<?>[] iterators = new Iterator<?>[INITIAL_STACK_SIZE];
+    private int depth;
+
+    // State of the streaming mode.
+    private JsonParser parser;
+    private JsonToken pushedBack;
+
+
+    /**
+     * Get an updater for the current thread. The returned updater has
+     * to be used only once, and it must not be kept.
+     */
+    static JsonDigestUpdater getInstance()
+    {
+        if (DigestPool.isVirtual(Thread.currentThread()))
+        {
+            return new JsonDigestUpdater();
+        }
+
+        JsonDigestUpdater updater = sLocal.get();
+
+        // The updater is in use if updateJson() is called while
+        // reading an InputStream or Reader given to updateJson().
+        return updater.inUse ? new JsonDigestUpdater() : updater;
+    }
+
+
+    public Digest update(Digest digest, final String json) throws IOException
+    {
+        return update(digest, new Source() {
+            @Override
+            JsonParser createParser(JsonFactory factory) throws IOException
+            {
+                return factory.createParser(json);
+            }
+        });
+    }
+
+
+    public Digest update(Digest digest, final byte[] json, final int offset, final int length) throws IOException
+    {
+        return update(digest, new Source() {
+            @Override
+            JsonParser createParser(JsonFactory factory) throws IOException
+            {
+                return factory.createParser(json, offset, length);
+            }
+        });
+    }
+
+
+    public Digest update(Digest digest, final ByteBuffer json) throws IOException
+    {
+        if (json.hasArray())
+        {
+            update(digest, json.array(), json.arrayOffset() + json.position(), json.remaining());
+        }
+        else
+        {
+            update(digest, new Source() {
+                @Override
+                JsonParser createParser(JsonFactory factory) throws IOException
+                {
+                    // Read a duplicate so that every parser starts
+                    // from the current position.
+                    return factory.createParser(new ByteBufferBackedInputStream(json.duplicate()));
+                }
+            });
+        }
+
+        // Consume the buffer as update(ByteBuffer) does.
+        json.position(json.limit());
+
+        return digest;
+    }
+
+
+    public Digest update(Digest digest, final InputStream json) throws IOException
+    {
+        return update(digest, new Source() {
+            @Override
+            JsonParser createParser(JsonFactory factory) throws IOException
+            {
+                // The stream is closed by the caller.
+                return factory.createParser(json).disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            }
+
+            @Override
+            boolean isReplayable()
+            {
+                return false;
+            }
+        });
+    }
+
+
+    public Digest update(Digest digest, final Reader json) throws IOException
+    {
+        return update(digest, new Source() {
+            @Override
+            JsonParser createParser(JsonFactory factory) throws IOException
+            {
+                // The reader is closed by the caller.
+                return factory.createParser(json).disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            }
+
+            @Override
+            boolean isReplayable()
+            {
+                return false;
+            }
+        });
+    }
+
+
+    public Digest update(Digest digest, final Path json) throws IOException
+    {
+        return update(digest, new Source() {
+            @Override
+            JsonParser createParser(JsonFactory factory) throws IOException
+            {
+                // The parser closes the stream.
+                return factory.createParser(Files.newInputStream(json));
+            }
+        });
+    }
+
+
+    public Digest update(Digest digest, final JsonParser json) throws IOException
+    {
+        return update(digest, new Source() {
+            @Override
+            JsonParser createParser(JsonFactory factory)
+            {
+                // The parser given by the caller.
+                return json;
+            }
+
+            @Override
+            boolean isReplayable()
+            {
+                return false;
+            }
+
+            @Override
+            void release(JsonParser parser)
+            {
+                // The parser is closed by the caller.
+            }
+        });
+    }
+
+
+    public Digest update(Digest digest, JsonNode json) throws IOException
+    {
+        initialize(digest);
+
+        try
+        {
+            return update(json);
+        }
+        finally
+        {
+            clear();
+        }
+    }
+
+
+    private Digest update(Digest digest, Source source) throws IOException
+    {
+        initialize(digest);
+
+        try
+        {
+            // Object entries can be processed in the order of appearance
+            // without building a node tree unless they have to be sorted.
+            if (sortKeys == false && stream(source))
+            {
+                return digest;
+            }
+
+            // Convert JSON to a node tree.
+            return update(createTree(source));
+        }
+        finally
+        {
+            clear();
+        }
+    }
+
+
+    private void initialize(Digest digest)
+    {
+        this.inUse = true;
+
+        // Set the digest to update.
+        this.digest = digest;
+
+        // Initialize the structural marks.
+        resetMarks();
+
+        // Copy configuration.
+        this.ignoreNull        = digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL);
+        this.ignoreFalse       = digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_FALSE);
+        this.ignoreZero        = digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_ZERO);
+        this.ignoreEmptyString = digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_STRING);
+        this.ignoreEmptyArray  = digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_ARRAY);
+        this.ignoreEmptyObject = digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_OBJECT);
+        this.sortKeys          = digest.isEnabled(SORT_JSON_OBJECT_ENTRY_KEYS);
+        this.maxDepth          = digest.getJsonMaxDepth();
+
+        this.mapper = getObjectMapper();
+    }
+
+
+    /**
+     * Make this updater ready for the next use. References to objects
+     * given by the caller are released.
+     */
+    private void clear()
+    {
+        this.digest     = null;
+        this.mapper     = null;
+        this.parser     = null;
+        this.pushedBack = null;
+
+        if (MAX_RETAINED_STACK_SIZE < containers.length)
+        {
+            this.containers = new boolean[INITIAL_STACK_SIZE];
+            this.iterators  = new Iterator<?>[INITIAL_STACK_SIZE];
+        }
+
+        this.inUse = false;
+    }
+
+
+    private Digest update(JsonNode root) throws IOException
+    {
+        // Traverse the node tree.
+        traverse(root);
+
+        // Finally, update the digest with the structural marks in order
+        // to prevent different JSONs from generating the same digest
+        // accidentally.
+        if (flushMarks() == false)
+        {
+            // There were too many marks to keep. Traverse the tree
+            // again to feed the marks to the digest directly.
+            replaying = true;
+            traverse(root);
+        }
+
+        return digest;
+    }
+
+
+    private void traverse(JsonNode root) throws IOException
+    {
+        // Path start
+        mark("P");
+
+        // Traverse the node tree.
+        updateTree(root);
+
+        // Path end
+        mark("p");
+    }
+
+
+    private void resetMarks()
+    {
+        this.markLength      = 0;
+        this.marksOverflowed = false;
+        this.replaying       = false;
+    }
+
+
+    /**
+     * Update the digest with the structural marks kept in memory.
+     *
+     * @return
+     *         {@code false} if the marks did not fit in the buffer. In
+     *         this case, the caller has to traverse the JSON again with
+     *         {@code replaying} set, which makes {@link #mark(String)}
+     *         update the digest directly and suppresses the content.
+     */
+    private boolean flushMarks()
+    {
+        if (marksOverflowed)
+        {
+            return false;
+        }
+
+        digest.update(marks, 0, markLength);
+
+        return true;
+    }
+
+
+    /**
+     * Update the digest by reading the JSON token by token. The
+     * result is the same as that of the tree-based processing.
+     *
+     * @return
+     *         {@code false} if the JSON could not be processed in the
+     *         streaming mode. In this case, the digest is left as it
+     *         was before this method was called, and the caller should
+     *         process the JSON in the tree-based mode, which handles
+     *         duplicate keys and reports syntax errors.
+     */
+    private boolean stream(Source source)
+    {
+        if (source.isReplayable() == false)
+        {
+            // The JSON cannot be read again for the fallback.
+            return false;
+        }
+
+        // The streaming mode updates the digest before the whole JSON
+        // is validated, so the state must be restorable.
+        MessageDigest snapshot = digest.snapshot();
+
+        if (snapshot == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            stream(createParser(source));
+
+            if (flushMarks() == false)
+            {
+                // There were too many marks to keep. Parse the JSON
+                // again to feed the marks to the digest directly.
+                replaying = true;
+                stream(createParser(source));
+            }
+
+            return true;
+        }
+        catch (IOException e)
+        {
+            digest.restore(snapshot);
+            resetMarks();
+            return false;
+        }
+        catch (RuntimeException e)
+        {
+            digest.restore(snapshot);
+            resetMarks();
+            return false;
+        }
+        finally
+        {
+            this.parser     = null;
+            this.pushedBack = null;
+        }
+    }
+
+
+    private JsonParser createParser(Source source) throws IOException
+    {
+        JsonParser parser = source.createParser(mapper.getFactory());
+
+        // Duplicate keys require the tree-based processing where
+        // the last value wins.
+        parser.enable(JsonParser.Feature.STRICT_DUPLICATE_DETECTION);
+
+        return parser;
+    }
+
+
+    private void stream(JsonParser parser) throws IOException
+    {
+        this.parser     = parser;
+        this.pushedBack = null;
+        this.depth      = 0;
+
+        try
+        {
+            // Path start
+            mark("P");
+
+            JsonToken token = nextToken();
+
+            // An empty JSON has no root value.
+            if (token != null)
+            {
+                streamValue(token);
+
+                while (depth != 0)
+                {
+                    streamNext();
+                }
+            }
+
+            // Path end
+            mark("p");
+        }
+        finally
+        {
+            parser.close();
+        }
+    }
+
+
+    private JsonToken nextToken() throws IOException
+    {
+        if (pushedBack != null)
+        {
+            JsonToken token = pushedBack;
+            pushedBack = null;
+
+            return token;
+        }
+
+        return parser.nextToken();
+    }
+
+
+    /**
+     * Process the next token in the current container.
+     */
+    private void streamNext() throws IOException
+    {
+        JsonToken token = nextToken();
+
+        if (token == null)
+        {
+            throw new IOException("Unexpected end of JSON.");
+        }
+
+        if (containers[depth - 1])
+        {
+            if (token == JsonToken.END_OBJECT)
+            {
+                pop();
+
+                // Object end.
+                mark("o");
+                endValue();
+                return;
+            }
+
+            String name = parser.currentName();
+            JsonToken value = nextToken();
+
+            if (shouldIgnore(value))
+            {
+                // Ignore this entry.
+                return;
+            }
+
+            // Key start.
+            mark("K");
+
+            updateName(name);
+
+            // Key end and Value start.
+            mark("kV");
+
+            streamValue(value);
+        }
+        else
+        {
+            if (token == JsonToken.END_ARRAY)
+            {
+                pop();
+
+                // Array end.
+                mark("a");
+                endValue();
+                return;
+            }
+
+            // Array element start.
+            mark("E");
+
+            streamValue(token);
+        }
+    }
+
+
+    /**
+     * Process a value which starts with the given token. For arrays
+     * and objects, only the start is processed here.
+     */
+    private void streamValue(JsonToken token) throws IOException
+    {
+        switch (token)
+        {
+            case START_ARRAY:
+                // Array start.
+                mark("A");
+                push(false, null);
+                return;
+
+            case START_OBJECT:
+                // Object start.
+                mark("O");
+                push(true, null);
+                return;
+
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                updateBoolean(token == JsonToken.VALUE_TRUE);
+                break;
+
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                // The text is not needed while replaying.
+                updateNumber(replaying ? null : getNumberText());
+                break;
+
+            case VALUE_STRING:
+                updateText(parser.getText());
+                break;
+
+            case VALUE_NULL:
+                updateNull();
+                break;
+
+            default:
+                throw new IOException("Unsupported token: " + token);
+        }
+
+        endValue();
+    }
+
+
+    private void push(boolean object, Iterator<?> iterator) throws IOException
+    {
+        if (depth == maxDepth)
+        {
+            throw new IOException("The nesting depth of the JSON exceeds the maximum (" + maxDepth + ").");
+        }
+
+        if (depth == containers.length)
+        {
+            int newLength = Math.min(depth * 2, maxDepth);
+
+            containers = Arrays.copyOf(containers, newLength);
+            iterators  = Arrays.copyOf(iterators,  newLength);
+        }
+
+        containers[depth] = object;
+        iterators[depth]  = iterator;
+        ++depth;
+    }
+
+
+    private void pop()
+    {
+        // Release the iterator so as not to hold the nodes.
+        iterators[--depth] = null;
+    }
+
+
+    /**
+     * Mark the end of an array element or an object entry after
+     * a value has been processed.
+     */
+    private void endValue()
+    {
+        if (depth == 0)
+        {
+            // The root value.
+            return;
+        }
+
+        if (containers[depth - 1])
+        {
+            // Value end.
+            mark("v");
+        }
+        else
+        {
+            // Array element end.
+            mark("e");
+        }
+    }
+
+
+    /**
+     * Streaming version of {@link #shouldIgnore(JsonNode)}. The parser
+     * is located at the given token.
+     */
+    private boolean shouldIgnore(JsonToken value) throws IOException
+    {
+        switch (value)
+        {
+            case VALUE_NULL:
+                return ignoreNull;
+
+            case VALUE_FALSE:
+                return ignoreFalse;
+
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return ignoreZero && isZero();
+
+            case VALUE_STRING:
+                return ignoreEmptyString && parser.getTextLength() == 0;
+
+            case START_ARRAY:
+                return ignoreEmptyArray && skipIfEmpty(JsonToken.END_ARRAY);
+
+            case START_OBJECT:
+                return ignoreEmptyObject && skipIfEmpty(JsonToken.END_OBJECT);
+
+            default:
+                return false;
+        }
+    }
+
+
+    /**
+     * Check if the container which has just started ends immediately.
+     * If it does not, the token read ahead is pushed back.
+     */
+    private boolean skipIfEmpty(JsonToken end) throws IOException
+    {
+        JsonToken token = parser.nextToken();
+
+        if (token == end)
+        {
+            return true;
+        }
+
+        pushedBack = token;
+
+        return false;
+    }
+
+
+    /**
+     * Check if the current number token is zero in the same way as
+     * {@link #isZero(JsonNode)}.
+     */
+    private boolean isZero() throws IOException
+    {
+        if (parser.currentToken() == JsonToken.VALUE_NUMBER_FLOAT)
+        {
+            return parser.getDecimalValue().signum() == 0;
+        }
+
+        switch (parser.getNumberType())
+        {
+            case INT:
+                return parser.getIntValue() == 0;
+
+            case LONG:
+                return parser.getLongValue() == 0;
+
+            default:
+                return parser.getBigIntegerValue().signum() == 0;
+        }
+    }
+
+
+    /**
+     * Get the text of the current number token which is equal to
+     * {@code toString()} of the number node which the tree-based
+     * processing would create.
+     */
+    private String getNumberText() throws IOException
+    {
+        if (parser.currentToken() == JsonToken.VALUE_NUMBER_FLOAT)
+        {
+            // With USE_BIG_DECIMAL_FOR_FLOATS, Jackson creates a
+            // DecimalNode whose value has no trailing zeros.
+            return parser.getDecimalValue().stripTrailingZeros().toString();
+        }
+
+        switch (parser.getNumberType())
+        {
+            case INT:
+                return String.valueOf(parser.getIntValue());
+
+            case LONG:
+                return String.valueOf(parser.getLongValue());
+
+            default:
+                return parser.getBigIntegerValue().toString();
+        }
+    }
+
+
+    private JsonNode createTree(Source source) throws IOException
+    {
+        JsonParser parser = source.createParser(mapper.getFactory());
+
+        try
+        {
+            JsonNode root = mapper.readTree(parser);
+
+            // An empty JSON. readTree(String) returns MissingNode for it.
+            return (root != null) ? root : MissingNode.getInstance();
+        }
+        finally
+        {
+            source.release(parser);
+        }
+    }
+
+
+    private ObjectMapper getObjectMapper()
+    {
+        if (maxDepth == Digest.DEFAULT_JSON_MAX_DEPTH)
+        {
+            return DEFAULT_MAPPER;
+        }
+
+        ObjectMapper custom = sCustomMappers.get(maxDepth);
+
+        if (custom != null)
+        {
+            return custom;
+        }
+
+        custom = createObjectMapper(maxDepth);
+
+        if (MAX_CUSTOM_MAPPERS <= sCustomMappers.size())
+        {
+            // Too many depths. Use the mapper without caching it.
+            return custom;
+        }
+
+        ObjectMapper existing = sCustomMappers.putIfAbsent(maxDepth, custom);
+
+        return (existing != null) ? existing : custom;
+    }
+
+
+    private static ObjectMapper createObjectMapper(int maxDepth)
+    {
+        // Let the parser accept (only) the same nesting depth as the
+        // traversal does.
+        JsonFactory factory = JsonFactory.builder()
+                .streamReadConstraints(StreamReadConstraints.builder().maxNestingDepth(maxDepth).build())
+                .build();
+
+        ObjectMapper mapper = new ObjectMapper(factory);
+
+        mapper.configure(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS, true);
+
+        return mapper;
+    }
+
+
+    private void mark(String mark)
+    {
+        int length = mark.length();
+
+        if (replaying)
+        {
+            // Marks consist of ASCII characters only, so this is the
+            // same as the UTF-8 encoding done by update(String).
+            for (int i = 0; i < length; ++i)
+            {
+                digest.update((byte)mark.charAt(i));
+            }
+
+            return;
+        }
+
+        if (marksOverflowed)
+        {
+            return;
+        }
+
+        if (marks.length - markLength < length)
+        {
+            // The marks will be generated again by replaying.
+            marksOverflowed = true;
+            return;
+        }
+
+        for (int i = 0; i < length; ++i)
+        {
+            marks[markLength++] = (byte)mark.charAt(i);
+        }
+    }
+
+
+    /**
+     * Traverse the node tree. The containers being traversed are kept
+     * in the work stack instead of the call stack, so deep nesting
+     * does not cause {@code StackOverflowError}.
+     */
+    private void updateTree(JsonNode root) throws IOException
+    {
+        this.depth = 0;
+
+        try
+        {
+            if (enter(root) == false)
+            {
+                // The root is not a container.
+                return;
+            }
+
+            while (depth != 0)
+            {
+                updateNext();
+            }
+        }
+        finally
+        {
+            // Release the iterators left by an error, if any.
+            while (depth != 0)
+            {
+                pop();
+            }
+        }
+    }
+
+
+    /**
+     * Process the next element or entry in the current container.
+     */
+    @SuppressWarnings("unchecked")
+    private void updateNext() throws IOException
+    {
+        Iterator<?> iterator = iterators[depth - 1];
+
+        if (containers[depth - 1])
+        {
+            if (iterator.hasNext() == false)
+            {
+                pop();
+
+                // Object end.
+                mark("o");
+                endValue();
+                return;
+            }
+
+            Map.Entry<String, JsonNode> field = (Map.Entry<String, JsonNode>)iterator.next();
+
+            // Update the digest with the pair of name and value.
+            updateObjectEntry(field.getKey(), field.getValue());
+        }
+        else
+        {
+            if (iterator.hasNext() == false)
+            {
+                pop();
+
+                // Array end.
+                mark("a");
+                endValue();
+                return;
+            }
+
+            // Array element start.
+            mark("E");
+
+            // Update the digest with the element.
+            if (enter((JsonNode)iterator.next()) == false)
+            {
+                // Array element end.
+                mark("e");
+            }
+        }
+    }
+
+
+    private void updateObjectEntry(String name, JsonNode value) throws IOException
+    {
+        if (shouldIgnore(value))
+        {
+            // Ignore this entry.
+            return;
+        }
+
+        // Key start.
+        mark("K");
+
+        // Update the digest with the name.
+        updateName(name);
+
+        // Key end and Value start.
+        mark("kV");
+
+        // Update the digest with the value.
+        if (enter(value) == false)
+        {
+            // Value end.
+            mark("v");
+        }
+    }
+
+
+    /**
+     * Start processing the node. If the node is a container, it is
+     * pushed onto the work stack and {@code true} is returned. The
+     * end of the value is marked when the container is popped.
+     * Otherwise, the digest is updated with the node.
+     */
+    private boolean enter(JsonNode node) throws IOException
+    {
+        if (node.isArray())
+        {
+            // Array start.
+            mark("A");
+
+            push(false, node.elements());
+
+            return true;
+        }
+
+        if (node.isObject())
+        {
+            // Object start.
+            mark("O");
+
+            push(true, getFields(node));
+
+            return true;
+        }
+
+        if (node.isBoolean())
+        {
+            updateBoolean(node);
+        }
+        else if (node.isNumber())
+        {
+            updateNumber(node);
+        }
+        else if (node.isTextual())
+        {
+            updateText(node);
+        }
+        else if (node.isNull())
+        {
+            updateNull(node);
+        }
+        else if (node.isBinary())
+        {
+            // Probably, this won't happen.
+            updateBinary(node);
+        }
+
+        return false;
+    }
+
+
+    private boolean shouldIgnore(JsonNode value)
+    {
+        if (ignoreNull && value.isNull())
+        {
+            // The value of the field is null. Ignore this entry.
+            return true;
+        }
+
+        if (ignoreFalse && value.isBoolean())
+        {
+            // Ignore this entry if its value is false.
+            return value.asBoolean() == false;
+        }
+
+        if (ignoreZero && value.isNumber())
+        {
+            // Ignore this entry if its value is zero.
+            return isZero(value);
+        }
+
+        if (ignoreEmptyString && value.isTextual())
+        {
+            // Ignore this entry if its value is an empty string.
+            return value.textValue().length() == 0;
+        }
+
+        if (ignoreEmptyArray && value.isArray())
+        {
+            // Ignore this entry if its value is an empty array.
+            return value.size() == 0;
+        }
+
+        if (ignoreEmptyObject && value.isObject())
+        {
+            // Ignore this entry if its value is an empty object.
+            return value.size() == 0;
+        }
+
+        // Should not ignore.
+        return false;
+    }
+
+
+    private boolean isZero(JsonNode value)
+    {
+        // int
+        if (value.isInt() && value.intValue() == 0)
+        {
+            return true;
+        }
+
+        // long
+        if (value.isLong() && value.longValue() == 0)
+        {
+            return true;
+        }
+
+        // short
+        if (value.isShort() && value.shortValue() == 0)
+        {
+            return true;
+        }
+
+        // float
+        if (value.isFloat() && value.floatValue() == 0.0F)
+        {
+            return true;
+        }
+
+        // double
+        if (value.isDouble() && value.doubleValue() == 0.0)
+        {
+            return true;
+        }
+
+        // BigInteger
+        if (value.isBigInteger() && value.bigIntegerValue().equals(BigInteger.ZERO))
+        {
+            return true;
+        }
+
+        // BigDecimal
+        if (value.isBigDecimal() && value.decimalValue().equals(BigDecimal.ZERO))
+        {
+            return true;
+        }
+
+        return false;
+    }
+
+
+    private Iterator<Map.Entry<String, JsonNode>> getFields(JsonNode node)
+    {
+        if (sortKeys == false)
+        {
+            // The fields in the original order.
+            return node.properties().iterator();
+        }
+
+        // Generate a list of fields.
+        List<Map.Entry<String, JsonNode>> list =
+                new ArrayList<Map.Entry<String, JsonNode>>(node.properties());
+
+        // Sort on field names.
+        Collections.sort(list, FIELD_NAME_COMPARATOR);
+
+        return list.iterator();
+    }
+
+
+    private void updateName(String name)
+    {
+        if (replaying == false)
+        {
+            digest.update(name);
+        }
+    }
+
+
+    private void updateBoolean(JsonNode node)
+    {
+        updateBoolean(node.asBoolean());
+    }
+
+
+    private void updateBoolean(boolean value)
+    {
+        // Boolean start.
+        mark("B");
+
+        if (replaying == false)
+        {
+            digest.update(value);
+        }
+
+        // "Boolean end.
+        mark("b");
+    }
+
+
+    private void updateNumber(JsonNode node)
+    {
+        // Numbers contribute to the digest as String to make it
+        // easy to implement JsonDigestUpdater equivalent for other
+        // non-Java platforms.
+        //
+        // Note that BigDecimal.toString() is used for floating point
+        // numbers because USE_BIG_DECIMAL_FOR_FLOATS is enabled.
+        updateNumber(replaying ? null : getNumberText(node));
+    }
+
+
+    private static String getNumberText(JsonNode node)
+    {
+        if (node.isFloatingPointNumber() == false)
+        {
+            // Integers.
+            return node.toString();
+        }
+
+        if (node.isBigDecimal() == false)
+        {
+            double value = node.doubleValue();
+
+            if (Double.isNaN(value) || Double.isInfinite(value))
+            {
+                // BigDecimal cannot represent them.
+                return node.toString();
+            }
+        }
+
+        // Trees given by callers may have been built without
+        // USE_BIG_DECIMAL_FOR_FLOATS or without stripping trailing
+        // zeros. Normalize the number in the same way as the tree
+        // built from text.
+        return node.decimalValue().stripTrailingZeros().toString();
+    }
+
+
+    private void updateNumber(String text)
+    {
+        // Number start.
+        mark("N");
+
+        if (replaying == false)
+        {
+            digest.update(text);
+        }
+
+        // Number end.
+        mark("n");
+    }
+
+
+    private void updateText(JsonNode node)
+    {
+        updateText(node.asText());
+    }
+
+
+    private void updateText(String text)
+    {
+        // Text start.
+        mark("T");
+
+        if (replaying == false)
+        {
+            digest.update(text);
+        }
+
+        // Text end.
+        mark("t");
+    }
+
+
+    private void updateNull(JsonNode node)
+    {
+        updateNull();
+    }
+
+
+    private void updateNull()
+    {
+        // Null start.
+        mark("<");
+
+        if (replaying == false)
+        {
+            digest.update("NULL");
+        }
+
+        // Null end.
+        mark(">");
+    }
+
+
+    private void updateBinary(JsonNode node)
+    {
+        // Binary start.
+        mark("[");
+
+        try
+        {
+            if (replaying == false)
+            {
+                digest.update(node.binaryValue());
+            }
+        }
+        catch (IOException e)
+        {
+            // This won't happen because updateBinary(JsonNode)
+            // is called only when node.isBinary() returns true.
+        }
+
+        // Binary end.
+        mark("]");
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Factory of {@link MessageDigest} instances.
+ *
+ * <p>
+ * {@link MessageDigest#getInstance(String)} looks up the security
+ * provider list every time. Depending on the JDK and the installed
+ * providers, the lookup can be costly and contend on locks when many
+ * threads call it ({@code CreationBenchmark} in {@code src/jmh/java}
+ * measures it). This factory resolves each pair of an
+ * algorithm and a provider only once, keeps a {@link MessageDigest}
+ * instance in its initial state as a prototype, and creates new
+ * instances by cloning the prototype. If the implementation does not
+ * support cloning, new instances are obtained from the provider which
+ * was found by the first lookup.
+ * </p>
+ *
+ * <p>
+ * Only lookups by an algorithm name, optionally with a provider name,
+ * are cached. {@link Provider} instances given by callers are not kept
+ * because they may be created for each call, which would make the
+ * cache grow without bound.
+ * </p>
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+final class MessageDigestFactory
+{
+    /**
+     * A resolved pair of an algorithm and a provider.
+     */
+    static final class Prototype
+    {
+        private final String mAlgorithm;
+        private final Provider mProvider;
+        private final MessageDigest mPrototype;
+
+
+        private Prototype(MessageDigest messageDigest)
+        {
+            mAlgorithm = messageDigest.getAlgorithm();
+            mProvider  = messageDigest.getProvider();
+            mPrototype = cloneOrNull(messageDigest);
+        }
+
+
+        private static MessageDigest cloneOrNull(MessageDigest messageDigest)
+        {
+            try
+            {
+                // Make sure that the implementation supports cloning.
+                messageDigest.clone();
+
+                return messageDigest;
+            }
+            catch (CloneNotSupportedException e)
+            {
+                return null;
+            }
+        }
+
+
+        /**
+         * Get the algorithm name.
+         */
+        String getAlgorithm()
+        {
+            return mAlgorithm;
+        }
+
+
+        /**
+         * Get the provider which implements the algorithm.
+         */
+        Provider getProvider()
+        {
+            return mProvider;
+        }
+
+
+        /**
+         * Create a new {@code MessageDigest} instance in its initial state.
+         *
+         * <p>
+         * This method can be called from multiple threads concurrently
+         * because the prototype is never updated.
+         * </p>
+         */
+        MessageDigest create()
+        {
+            try
+            {
+                if (mPrototype != null)
+                {
+                    return (MessageDigest)mPrototype.clone();
+                }
+
+                return MessageDigest.getInstance(mAlgorithm, mProvider);
+            }
+            catch (CloneNotSupportedException e)
+            {
+                // This won't happen because cloning has been tested.
+                throw new IllegalStateException("Failed to clone a MessageDigest instance.", e);
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                // This won't happen because the provider has once
+                // created an instance of the algorithm.
+                throw new IllegalStateException("Failed to create a MessageDigest instance.", e);
+            }
+        }
+    }
+
+
+    /**
+     * Key of the cache.
+     */
+    private static final class Key
+    {
+        private final String mAlgorithm;
+        private final String mProvider;
+
+
+        Key(String algorithm, String provider)
+        {
+            mAlgorithm = algorithm;
+            mProvider  = provider;
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return mAlgorithm.hashCode() * 31 + mProvider.hashCode();
+        }
+
+
+        @Override
+        public boolean equals(Object object)
+        {
+            if (object instanceof Key == false)
+            {
+                return false;
+            }
+
+            Key key = (Key)object;
+
+            return mAlgorithm.equals(key.mAlgorithm) && mProvider.equals(key.mProvider);
+        }
+    }
+
+
+    /**
+     * The provider part of a key when no provider is specified. Provider
+     * names cannot be empty.
+     */
+    private static final String ANY_PROVIDER = "";
+
+
+    /**
+     * Resolved prototypes.
+     */
+    private static final ConcurrentMap<Key, Prototype> sPrototypes =
+            new ConcurrentHashMap<Key, Prototype>();
+
+
+    private MessageDigestFactory()
+    {
+    }
+
+
+    /**
+     * Get the prototype for the specified algorithm.
+     */
+    static Prototype getPrototype(String algorithm) throws NoSuchAlgorithmException
+    {
+        Key key = new Key(algorithm, ANY_PROVIDER);
+        Prototype prototype = sPrototypes.get(key);
+
+        if (prototype == null)
+        {
+            prototype = register(key, MessageDigest.getInstance(algorithm));
+        }
+
+        return prototype;
+    }
+
+
+    /**
+     * Get the prototype for the specified algorithm and provider.
+     */
+    static Prototype getPrototype(String algorithm, String provider)
+            throws NoSuchAlgorithmException, NoSuchProviderException
+    {
+        Key key = new Key(algorithm, provider);
+        Prototype prototype = sPrototypes.get(key);
+
+        if (prototype == null)
+        {
+            prototype = register(key, MessageDigest.getInstance(algorithm, provider));
+        }
+
+        return prototype;
+    }
+
+
+    /**
+     * Get a prototype for the specified algorithm and provider. The
+     * prototype is not cached, so the caller should keep it.
+     */
+    static Prototype getPrototype(String algorithm, Provider provider) throws NoSuchAlgorithmException
+    {
+        return new Prototype(MessageDigest.getInstance(algorithm, provider));
+    }
+
+
+    private static Prototype register(Key key, MessageDigest messageDigest)
+    {
+        Prototype prototype = new Prototype(messageDigest);
+        Prototype existing  = sPrototypes.putIfAbsent(key, prototype);
+
+        return (existing != null) ? existing : prototype;
+    }
+
+
+    /**
+     * Create a {@code MessageDigest} instance that implements the
+     * specified algorithm. This method behaves like {@link
+     * MessageDigest#getInstance(String)} except that the result of
+     * the provider lookup is cached.
+     */
+    static MessageDigest create(String algorithm) throws NoSuchAlgorithmException
+    {
+        if (algorithm == null)
+        {
+            // Let MessageDigest report the error.
+            return MessageDigest.getInstance(algorithm);
+        }
+
+        return getPrototype(algorithm).create();
+    }
+
+
+    /**
+     * Create a {@code MessageDigest} instance that implements the
+     * specified algorithm. This method behaves like {@link
+     * MessageDigest#getInstance(String, String)} except that the
+     * result of the provider lookup is cached.
+     */
+    static MessageDigest create(String algorithm, String provider)
+            throws NoSuchAlgorithmException, NoSuchProviderException
+    {
+        if (algorithm == null || provider == null)
+        {
+            // Let MessageDigest report the error.
+            return MessageDigest.getInstance(algorithm, provider);
+        }
+
+        return getPrototype(algorithm, provider).create();
+    }
+
+
+    /**
+     * Create a {@code MessageDigest} instance that implements the
+     * specified algorithm. This method is the same as {@link
+     * MessageDigest#getInstance(String, Provider)}. The provider is
+     * given directly, so there is no provider list to look up.
+     */
+    static MessageDigest create(String algorithm, Provider provider) throws NoSuchAlgorithmException
+    {
+        return MessageDigest.getInstance(algorithm, provider);
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executor;
+
+
+/**
+ * {@link Digest} which computes hash values of multiple algorithms
+ * in one pass.
+ *
+ * <p>
+ * All the {@code update} methods of {@link Digest} are available.
+ * Each input value is encoded only once into the staging buffer, and
+ * the buffer is given to all the wrapped {@link MessageDigest}
+ * instances. Use {@link #digests()} or {@link #digestsAsStrings()}
+ * to get the hash value of each algorithm. {@link #digest()} returns
+ * the concatenation of the hash values in the order of the algorithms.
+ * </p>
+ *
+ * <pre style="background-color: #EEEEEE; margin-left: 2em; margin-right: 2em; border: 1px solid black;">
+ * MultiDigest digest = new MultiDigest(<span style="color: #990000">"MD5"</span>, <span style="color: #990000">"SHA-1"</span>, <span style="color: #990000">"SHA-256"</span>);
+ *
+ * digest.{@link #update(java.io.InputStream) update}(blob);
+ *
+ * <span style="color: darkgreen;">// MD5, SHA-1 and SHA-256 in this order.</span>
+ * String[] values = digest.{@link #digestsAsStrings()};
+ * </pre>
+ *
+ * <p>
+ * Note that the {@code update} methods are inherited from {@code Digest}
+ * and their return type is {@code Digest}, so a chain of {@code update}
+ * calls cannot end with {@link #digests()}.
+ * </p>
+ *
+ * <p>
+ * If an {@link Executor} is given to the constructor, each algorithm
+ * runs on the executor. Input data is copied once into a ring of
+ * chunks, and the algorithms consume the chunks in parallel, so large
+ * inputs are hashed using as many cores as the number of algorithms.
+ * Methods that need the results, such as {@link #digest()}, wait for
+ * the algorithms to catch up. The parallel mode pays off only for
+ * large inputs.
+ * </p>
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+public class MultiDigest extends Digest
+{
+    /**
+     * Constructor with algorithm names. The algorithms run on the
+     * calling thread.
+     *
+     * @param algorithms
+     *         Algorithm names such as "MD5" and "SHA-1".
+     *
+     * @throws IllegalArgumentException
+     *         {@code algorithms} is {@code null} or empty, or contains
+     *         {@code null}.
+     *
+     * @throws NoSuchAlgorithmException
+     *         No provider supports one of the specified algorithms.
+     */
+    public MultiDigest(String... algorithms) throws NoSuchAlgorithmException
+    {
+        this(null, algorithms);
+    }
+
+
+    /**
+     * Constructor with an executor and algorithm names.
+     *
+     * @param executor
+     *         The executor on which each algorithm runs. If {@code null}
+     *         is given, the algorithms run on the calling thread.
+     *
+     * @param algorithms
+     *         Algorithm names such as "MD5" and "SHA-1".
+     *
+     * @throws IllegalArgumentException
+     *         {@code algorithms} is {@code null} or empty, or contains
+     *         {@code null}.
+     *
+     * @throws NoSuchAlgorithmException
+     *         No provider supports one of the specified algorithms.
+     */
+    public MultiDigest(Executor executor, String... algorithms) throws NoSuchAlgorithmException
+    {
+        this(executor, createMessageDigests(algorithms));
+    }
+
+
+    /**
+     * Constructor with {@link MessageDigest} instances. The algorithms
+     * run on the calling thread.
+     *
+     * @param messageDigests
+     *         {@code MessageDigest} instances wrapped in this instance.
+     *
+     * @throws IllegalArgumentException
+     *         {@code messageDigests} is {@code null} or empty, or
+     *         contains {@code null}.
+     */
+    public MultiDigest(MessageDigest... messageDigests)
+    {
+        this(null, messageDigests);
+    }
+
+
+    /**
+     * Constructor with an executor and {@link MessageDigest} instances.
+     *
+     * @param executor
+     *         The executor on which each algorithm runs. If {@code null}
+     *         is given, the algorithms run on the calling thread.
+     *
+     * @param messageDigests
+     *         {@code MessageDigest} instances wrapped in this instance.
+     *
+     * @throws IllegalArgumentException
+     *         {@code messageDigests} is {@code null} or empty, or
+     *         contains {@code null}.
+     */
+    public MultiDigest(Executor executor, MessageDigest... messageDigests)
+    {
+        super(new CompositeMessageDigest(checkMessageDigests(messageDigests), executor));
+    }
+
+
+    private static MessageDigest[] createMessageDigests(String[] algorithms) throws NoSuchAlgorithmException
+    {
+        if (algorithms == null || algorithms.length == 0)
+        {
+            throw new IllegalArgumentException("algorithms is null or empty.");
+        }
+
+        MessageDigest[] messageDigests = new MessageDigest[algorithms.length];
+
+        for (int i = 0; i < algorithms.length; ++i)
+        {
+            if (algorithms[i] == null)
+            {
+                throw new IllegalArgumentException("algorithms contains null.");
+            }
+
+            messageDigests[i] = MessageDigestFactory.create(algorithms[i]);
+        }
+
+        return messageDigests;
+    }
+
+
+    private static MessageDigest[] checkMessageDigests(MessageDigest[] messageDigests)
+    {
+        if (messageDigests == null || messageDigests.length == 0)
+        {
+            throw new IllegalArgumentException("messageDigests is null or empty.");
+        }
+
+        for (MessageDigest md : messageDigests)
+        {
+            if (md == null)
+            {
+                throw new IllegalArgumentException("messageDigests contains null.");
+            }
+        }
+
+        return messageDigests.clone();
+    }
+
+
+    private CompositeMessageDigest getComposite()
+    {
+        // getWrappedMessageDigest() flushes the staging buffer.
+        return (CompositeMessageDigest)getWrappedMessageDigest();
+    }
+
+
+    /**
+     * Get the algorithm names in the order given to the constructor.
+     *
+     * @return
+     *         Algorithm names.
+     */
+    public String[] getAlgorithms()
+    {
+        CompositeMessageDigest composite = getComposite();
+        String[] algorithms = new String[composite.size()];
+
+        for (int i = 0; i < algorithms.length; ++i)
+        {
+            algorithms[i] = composite.getAlgorithm(i);
+        }
+
+        return algorithms;
+    }
+
+
+    /**
+     * Complete the hash computation of each algorithm. The digest
+     * is reset after this call is made.
+     *
+     * @return
+     *         The resulting hash values in the order of the algorithms.
+     */
+    public byte[][] digests()
+    {
+        return getComposite().digests();
+    }
+
+
+    /**
+     * Complete the hash computation of each algorithm and get the
+     * resulting hash values as hex strings. The digest is reset
+     * after this call is made.
+     *
+     * @return
+     *         The resulting hash values in the order of the algorithms.
+     */
+    public String[] digestsAsStrings()
+    {
+        return digestsAsStrings(DigestEncoding.HEX);
+    }
+
+
+    /**
+     * Complete the hash computation of each algorithm and get the
+     * resulting hash values encoded by the specified encoding. The
+     * digest is reset after this call is made.
+     *
+     * @param encoding
+     *         The encoding of the hash values.
+     *
+     * @return
+     *         The resulting hash values in the order of the algorithms.
+     *
+     * @throws IllegalArgumentException
+     *         {@code encoding} is {@code null}.
+     */
+    public String[] digestsAsStrings(DigestEncoding encoding)
+    {
+        if (encoding == null)
+        {
+            throw new IllegalArgumentException("encoding is null.");
+        }
+
+        byte[][] digests = digests();
+        String[] strings = new String[digests.length];
+
+        for (int i = 0; i < digests.length; ++i)
+        {
+            strings[i] = encoding.encode(digests[i]);
+        }
+
+        return strings;
+    }
+}
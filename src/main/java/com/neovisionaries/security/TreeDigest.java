@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * Tree hash which computes a digest of a large input using multiple
+ * cores.
+ *
+ * <p>
+ * The input is split into leaves of a fixed size (the last leaf may
+ * be shorter), the leaves are hashed in parallel on a {@link
+ * ForkJoinPool}, and the leaf hashes are combined into a root hash.
+ * The construction is the Merkle Tree Hash defined in <a href=
+ * "https://tools.ietf.org/html/rfc6962#section-2.1">RFC 6962, 2.1.
+ * Merkle Hash Trees</a>, where {@code H} is the algorithm of the
+ * {@link DigestSpec} and {@code ||} is concatenation:
+ * </p>
+ *
+ * <ul>
+ * <li>The hash of an empty input is {@code H()}.
+ * <li>The hash of a leaf {@code d} is {@code H(0x00 || d)}.
+ * <li>The hash of a list of {@code n > 1} leaves is
+ *     {@code H(0x01 || MTH(D[0:k]) || MTH(D[k:n]))}, where {@code k}
+ *     is the largest power of two smaller than {@code n}.
+ * </ul>
+ *
+ * <p>
+ * The prefixes {@code 0x00} and {@code 0x01} separate leaf hashes
+ * from node hashes. The result differs from the plain digest of the
+ * input, and it depends on the leaf size, so both parties must agree
+ * on the algorithm and the leaf size.
+ * </p>
+ *
+ * <pre style="background-color: #EEEEEE; margin-left: 2em; margin-right: 2em; border: 1px solid black;">
+ * TreeDigest tree = new TreeDigest(DigestSpec.{@link DigestSpec#getInstance(String) getInstance}(<span style="color: #990000">"SHA-256"</span>));
+ *
+ * byte[] root = tree.{@link #digest(ByteBuffer) digest}(buffer);
+ * </pre>
+ *
+ * <p>
+ * Instances of this class are immutable and thread-safe.
+ * </p>
+ *
+ * @author Takahiko Kawasaki
+ *
+ * @since 1.7
+ */
+public class TreeDigest
+{
+    /**
+     * The default leaf size (1 MiB).
+     */
+    public static final int DEFAULT_LEAF_SIZE = 1024 * 1024;
+
+
+    private static final byte LEAF_PREFIX = 0x00;
+    private static final byte NODE_PREFIX = 0x01;
+
+
+    /**
+     * Task which computes the hash of a range of leaves.
+     */
+    private final class Node extends RecursiveTask<byte[]>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer mInput;
+        private final int mFrom;
+        private final int mTo;
+
+
+        Node(ByteBuffer input, int from, int to)
+        {
+            mInput = input;
+            mFrom  = from;
+            mTo    = to;
+        }
+
+
+        @Override
+        protected byte[] compute()
+        {
+            if (mTo - mFrom == 1)
+            {
+                return hashLeaf(mInput, mFrom);
+            }
+
+            int split = mFrom + largestPowerOfTwoBelow(mTo - mFrom);
+
+            Node left = new Node(mInput, mFrom, split);
+            left.fork();
+
+            byte[] right = new Node(mInput, split, mTo).compute();
+
+            return hashNode(left.join(), right);
+        }
+    }
+
+
+    private final DigestPool mPool;
+    private final int mLeafSize;
+    private final ForkJoinPool mForkJoinPool;
+
+
+    /**
+     * Constructor with a spec. The leaf size is {@link #DEFAULT_LEAF_SIZE}
+     * and leaves are hashed on {@link ForkJoinPool#commonPool()}.
+     *
+     * @param spec
+     *         Configuration of {@link Digest} instances used to hash
+     *         leaves and nodes.
+     *
+     * @throws IllegalArgumentException
+     *         {@code spec} is {@code null}.
+     */
+    public TreeDigest(DigestSpec spec)
+    {
+        this(spec, DEFAULT_LEAF_SIZE, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Constructor with a spec, a leaf size and a fork/join pool.
+     *
+     * @param spec
+     *         Configuration of {@link Digest} instances used to hash
+     *         leaves and nodes.
+     *
+     * @param leafSize
+     *         The size of leaves in bytes.
+     *
+     * @param forkJoinPool
+     *         The pool on which leaves are hashed.
+     *
+     * @throws IllegalArgumentException
+     *         {@code spec} or {@code forkJoinPool} is {@code null}, or
+     *         {@code leafSize} is not positive.
+     */
+    public TreeDigest(DigestSpec spec, int leafSize, ForkJoinPool forkJoinPool)
+    {
+        if (leafSize <= 0)
+        {
+            throw new IllegalArgumentException("leafSize is not positive.");
+        }
+
+        if (forkJoinPool == null)
+        {
+            throw new IllegalArgumentException("forkJoinPool is null.");
+        }
+
+        mPool         = new DigestPool(spec);
+        mLeafSize     = leafSize;
+        mForkJoinPool = forkJoinPool;
+    }
+
+
+    /**
+     * Get the algorithm name.
+     *
+     * @return
+     *         Algorithm name.
+     */
+    public String getAlgorithm()
+    {
+        return mPool.getAlgorithm();
+    }
+
+
+    /**
+     * Get the leaf size.
+     *
+     * @return
+     *         The size of leaves in bytes.
+     */
+    public int getLeafSize()
+    {
+        return mLeafSize;
+    }
+
+
+    /**
+     * Compute the tree hash of the given bytes.
+     *
+     * @param input
+     *         Input data.
+     *
+     * @return
+     *         The root hash.
+     *
+     * @throws IllegalArgumentException
+     *         {@code input} is {@code null}.
+     */
+    public byte[] digest(byte[] input)
+    {
+        if (input == null)
+        {
+            throw new IllegalArgumentException("input is null.");
+        }
+
+        return digest(input, 0, input.length);
+    }
+
+
+    /**
+     * Compute the tree hash of the bytes in the specified range.
+     *
+     * @param input
+     *         Input data.
+     *
+     * @param offset
+     *         The offset to start from in the array.
+     *
+     * @param length
+     *         The number of bytes to use, starting at offset.
+     *
+     * @return
+     *         The root hash.
+     *
+     * @throws IllegalArgumentException
+     *         {@code input} is {@code null}, or the range is invalid.
+     */
+    public byte[] digest(byte[] input, int offset, int length)
+    {
+        if (input == null)
+        {
+            throw new IllegalArgumentException("input is null.");
+        }
+
+        if (offset < 0 || length < 0 || input.length - offset < length)
+        {
+            throw new IllegalArgumentException("The range is invalid.");
+        }
+
+        return compute(ByteBuffer.wrap(input, offset, length).slice());
+    }
+
+
+    /**
+     * Compute the tree hash of the remaining bytes of the given buffer.
+     * The position of the buffer is advanced to its limit, as {@link
+     * Digest#update(ByteBuffer)} does.
+     *
+     * @param input
+     *         Input data.
+     *
+     * @return
+     *         The root hash.
+     *
+     * @throws IllegalArgumentException
+     *         {@code input} is {@code null}.
+     */
+    public byte[] digest(ByteBuffer input)
+    {
+        if (input == null)
+        {
+            throw new IllegalArgumentException("input is null.");
+        }
+
+        byte[] result = compute(input.slice());
+
+        input.position(input.limit());
+
+        return result;
+    }
+
+
+    /**
+     * Compute the tree hash of the given buffer whose position is 0.
+     */
+    private byte[] compute(ByteBuffer input)
+    {
+        int size = input.remaining();
+
+        if (size == 0)
+        {
+            Digest digest = mPool.acquire();
+
+            try
+            {
+                return digest.digest();
+            }
+            finally
+            {
+                mPool.release(digest);
+            }
+        }
+
+        int leaves = (int)((size + (long)mLeafSize - 1) / mLeafSize);
+
+        if (leaves == 1)
+        {
+            return hashLeaf(input, 0);
+        }
+
+        return mForkJoinPool.invoke(new Node(input, 0, leaves));
+    }
+
+
+    private byte[] hashLeaf(ByteBuffer input, int index)
+    {
+        ByteBuffer leaf = input.duplicate();
+        int start = index * mLeafSize;
+
+        leaf.position(start);
+        leaf.limit(start + Math.min(mLeafSize, input.limit() - start));
+
+        Digest digest = mPool.acquire();
+
+        try
+        {
+            return digest.update(LEAF_PREFIX).update(leaf).digest();
+        }
+        finally
+        {
+            mPool.release(digest);
+        }
+    }
+
+
+    private byte[] hashNode(byte[] left, byte[] right)
+    {
+        Digest digest = mPool.acquire();
+
+        try
+        {
+            return digest.update(NODE_PREFIX).update(left).update(right).digest();
+        }
+        finally
+        {
+            mPool.release(digest);
+        }
+    }
+
+
+    private static int largestPowerOfTwoBelow(int n)
+    {
+        // n > 1
+        return Integer.highestOneBit(n - 1);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL;
+import static com.neovisionaries.security.Digest.Feature.SORT_JSON_OBJECT_ENTRY_KEYS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.util.EnumSet;
+import org.junit.Test;
+
+
+public class DigestPoolTest
+{
+    @Test
+    public void test1()
+    {
+        DigestPool pool = new DigestPool(Digest.getInstanceSHA1(), 1);
+
+        Digest digest1 = pool.acquire();
+        assertEquals(0, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+
+        // Leave garbage in the instance. It must be reset on release.
+        digest1.update("garbage").setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false);
+        pool.release(digest1);
+
+        // The per-thread cache.
+        Digest digest2 = pool.acquire();
+        assertSame(digest1, digest2);
+        assertEquals(1, pool.getThreadLocalHitCount());
+        assertTrue(digest2.isEnabled(SORT_JSON_OBJECT_ENTRY_KEYS));
+        assertEquals("2ae01472317d1935a84797ec1983ae243fc6aa28",
+                digest2.update("Hello, world.").digestAsString());
+
+        // The second and the third instances go to the shared pool,
+        // but the shared pool can hold only one.
+        Digest digest3 = pool.acquire();
+        Digest digest4 = pool.acquire();
+        pool.release(digest2);
+        pool.release(digest3);
+        pool.release(digest4);
+
+        assertSame(digest2, pool.acquire());
+        assertSame(digest3, pool.acquire());
+        assertEquals(1, pool.getSharedHitCount());
+        pool.acquire();
+        assertEquals(4, pool.getMissCount());
+    }
+
+
+    @Test
+    public void test2()
+    {
+        DigestPool pool = new DigestPool(Digest.getInstanceMD5());
+        Digest leased;
+
+        try (DigestPool.Lease lease = pool.lease())
+        {
+            leased = lease.getDigest();
+            leased.update("Hello");
+        }
+
+        try (DigestPool.Lease lease = pool.lease())
+        {
+            assertSame(leased, lease.getDigest());
+            assertEquals(Digest.getInstanceMD5().digestAsString(), lease.getDigest().digestAsString());
+        }
+    }
+
+
+    @Test
+    public void test3() throws Exception
+    {
+        DigestPool pool1 = DigestPool.getInstance("SHA-256", EnumSet.of(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL));
+        DigestPool pool2 = DigestPool.getInstance("SHA-256", EnumSet.of(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL));
+        DigestPool pool3 = DigestPool.getInstance("SHA-256", EnumSet.noneOf(Digest.Feature.class));
+
+        assertSame(pool1, pool2);
+        assertFalse(pool1 == pool3);
+
+        Digest digest = pool1.acquire();
+        assertTrue(digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL));
+        assertFalse(digest.isEnabled(SORT_JSON_OBJECT_ENTRY_KEYS));
+        assertEquals("SHA-256", digest.getAlgorithm());
+    }
+
+
+    @Test
+    public void test4()
+    {
+        DigestPool pool = new DigestPool(Digest.getInstanceSHA1().setJsonMaxDepth(50), 1);
+
+        Digest digest1 = pool.acquire();
+        assertEquals(50, digest1.getJsonMaxDepth());
+
+        // A depth changed by the user must be restored to the prototype's.
+        digest1.setJsonMaxDepth(2);
+        pool.release(digest1);
+
+        Digest digest2 = pool.acquire();
+        assertSame(digest1, digest2);
+        assertEquals(50, digest2.getJsonMaxDepth());
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL;
+import static com.neovisionaries.security.Digest.Feature.SORT_JSON_OBJECT_ENTRY_KEYS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.security.MessageDigest;
+import java.security.MessageDigestSpi;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.EnumSet;
+import java.util.Map;
+import org.junit.Test;
+
+
+public class DigestSpecTest
+{
+    @Test
+    public void test1() throws NoSuchAlgorithmException
+    {
+        DigestSpec spec = DigestSpec.getInstance("SHA-1");
+
+        assertEquals("SHA-1", spec.getAlgorithm());
+        assertEquals(EnumSet.of(SORT_JSON_OBJECT_ENTRY_KEYS), spec.getFeatures());
+
+        Digest digest1 = spec.createDigest();
+        Digest digest2 = spec.createDigest();
+
+        assertNotSame(digest1, digest2);
+        assertTrue(digest1.isEnabled(SORT_JSON_OBJECT_ENTRY_KEYS));
+        assertEquals("2ae01472317d1935a84797ec1983ae243fc6aa28",
+                digest1.update("Hello, world.").digestAsString());
+
+        // digest1 and digest2 do not share state.
+        assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709", digest2.digestAsString());
+    }
+
+
+    @Test
+    public void test2() throws NoSuchAlgorithmException, IOException
+    {
+        DigestSpec spec1 = DigestSpec.getInstance("SHA-256");
+        DigestSpec spec2 = spec1.withEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL, true);
+
+        // Specs are immutable.
+        assertFalse(spec1.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL));
+        assertTrue(spec2.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL));
+        assertSame(spec2, spec2.withEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL, true));
+
+        String expected = Digest.getInstanceSHA256()
+                .setEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL, true)
+                .updateJson("{\"a\":1,\"b\":null}").digestAsString();
+
+        assertEquals(expected, spec2.createDigest().updateJson("{\"a\":1,\"b\":null}").digestAsString());
+
+        DigestSpec spec3 = spec1.withFeatures(EnumSet.noneOf(Digest.Feature.class));
+        assertFalse(spec3.createDigest().isEnabled(SORT_JSON_OBJECT_ENTRY_KEYS));
+    }
+
+
+    @Test
+    public void test3() throws NoSuchAlgorithmException
+    {
+        DigestPool pool = new DigestPool(
+                DigestSpec.getInstance("MD5").withEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false));
+
+        Digest digest = pool.acquire();
+
+        assertEquals("MD5", digest.getAlgorithm());
+        assertFalse(digest.isEnabled(SORT_JSON_OBJECT_ENTRY_KEYS));
+    }
+
+
+    private static int getCacheSize() throws Exception
+    {
+        Field field = MessageDigestFactory.class.getDeclaredField("sPrototypes");
+        field.setAccessible(true);
+
+        return ((Map<?, ?>)field.get(null)).size();
+    }
+
+
+    /**
+     * SHA-1 implementation registered by {@link #createProvider()}.
+     */
+    public static class Sha1Spi extends MessageDigestSpi
+    {
+        private final MessageDigest mMessageDigest;
+
+
+        public Sha1Spi() throws NoSuchAlgorithmException
+        {
+            mMessageDigest = MessageDigest.getInstance("SHA-1");
+        }
+
+
+        @Override
+        protected void engineUpdate(byte input)
+        {
+            mMessageDigest.update(input);
+        }
+
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len)
+        {
+            mMessageDigest.update(input, offset, len);
+        }
+
+
+        @Override
+        protected byte[] engineDigest()
+        {
+            return mMessageDigest.digest();
+        }
+
+
+        @Override
+        protected void engineReset()
+        {
+            mMessageDigest.reset();
+        }
+    }
+
+
+    @SuppressWarnings({ "deprecation", "serial" })
+    private static Provider createProvider()
+    {
+        return new Provider("NvDigestTest", 1.0, "Provider for tests")
+        {
+            {
+                put("MessageDigest.SHA-1", Sha1Spi.class.getName());
+            }
+        };
+    }
+
+
+    @Test
+    public void test4() throws Exception
+    {
+        Digest.getInstance("SHA-1");
+        int size = getCacheSize();
+
+        // Providers created for each call are not cached.
+        for (int i = 0; i < 100; ++i)
+        {
+            Provider provider = createProvider();
+
+            assertEquals("2ae01472317d1935a84797ec1983ae243fc6aa28",
+                    Digest.getInstance("SHA-1", provider).update("Hello, world.").digestAsString());
+            assertEquals("2ae01472317d1935a84797ec1983ae243fc6aa28",
+                    DigestSpec.getInstance("SHA-1", provider).createDigest().update("Hello, world.").digestAsString());
+        }
+
+        assertEquals(size, getCacheSize());
+
+        // Lookups by a provider name are cached.
+        String name = MessageDigest.getInstance("SHA-1").getProvider().getName();
+        Digest.getInstance("SHA-1", name);
+        size = getCacheSize();
+        Digest.getInstance("SHA-1", name);
+        assertEquals(size, getCacheSize());
+    }
+
+
+    @Test
+    public void test5() throws NoSuchAlgorithmException, IOException
+    {
+        DigestSpec spec1 = DigestSpec.getInstance("SHA-1");
+        DigestSpec spec2 = spec1.withJsonMaxDepth(2);
+
+        assertEquals(Digest.DEFAULT_JSON_MAX_DEPTH, spec1.getJsonMaxDepth());
+        assertEquals(2, spec2.getJsonMaxDepth());
+        assertSame(spec2, spec2.withJsonMaxDepth(2));
+
+        // The depth survives changes of features.
+        assertEquals(2, spec2.withEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false).getJsonMaxDepth());
+
+        // Digests created by the spec and by a pool built from it.
+        DigestPool pool = new DigestPool(spec2);
+        Digest[] digests = { spec2.createDigest(), pool.acquire() };
+
+        for (Digest digest : digests)
+        {
+            assertEquals(2, digest.getJsonMaxDepth());
+            digest.updateJson("[[]]");
+
+            try
+            {
+                digest.updateJson("[[[]]]");
+                fail();
+            }
+            catch (IOException e)
+            {
+                // Expected.
+            }
+        }
+    }
+}
@@ -25,15 +25,45 @@ import static com.neovisionaries.security.Digest.Feature.IGNORE_JSON_OBJECT_ENTR
 import static com.neovisionaries.security.Digest.Feature.SORT_JSON_OBJECT_ENTRY_KEYS;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import org.apache.commons.codec.binary.Base32;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
 import org.junit.Test;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 
 public class DigestTest
@@ -611,4 +641,975 @@ public class DigestTest
 
         doJsonTest(json1, json2, digest1, digest2, false);
     }
+
+
+    @Test
+    public void test28() throws Exception
+    {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        Digest digest = Digest.getInstanceSHA256();
+
+        // More than the size of the staging buffer, mixed with bulk updates.
+        for (int i = 0; i < 1000; ++i)
+        {
+            md.update((byte)((i >> 24) & 0xff));
+            md.update((byte)((i >> 16) & 0xff));
+            md.update((byte)((i >>  8) & 0xff));
+            md.update((byte)((i >>  0) & 0xff));
+            md.update((byte)((i >> 8) & 0xff));
+            md.update((byte)((i >> 0) & 0xff));
+            md.update((byte)1);
+
+            digest.update(i).update((short)i).update(true);
+
+            if (i % 100 == 0)
+            {
+                md.update(new byte[] { 1, 2, 3 });
+                digest.update(new byte[] { 1, 2, 3 });
+            }
+        }
+
+        // Data in the staging buffer must be carried over to a clone.
+        MessageDigest mdCloned = (MessageDigest)md.clone();
+        Digest cloned = (Digest)digest.clone();
+        mdCloned.update((byte)0);
+        mdCloned.update((byte)'a');
+        cloned.update('a');
+
+        assertEquals(Digest.bytesToHex(md.digest()), digest.digestAsString());
+        assertEquals(Digest.bytesToHex(mdCloned.digest()), cloned.digestAsString());
+
+        // Data in the staging buffer must be discarded by reset().
+        assertEquals(
+                Digest.getInstanceSHA256().update(1L).digestAsString(),
+                Digest.getInstanceSHA256().update(2L).reset().update(1L).digestAsString());
+    }
+
+
+    @Test
+    public void test29()
+    {
+        // Arrays larger than the staging buffer, with non-zero offsets.
+        int size = 1000;
+
+        boolean[] booleans = new boolean[size];
+        char[]    chars    = new char[size];
+        short[]   shorts   = new short[size];
+        int[]     ints     = new int[size];
+        long[]    longs    = new long[size];
+        float[]   floats   = new float[size];
+        double[]  doubles  = new double[size];
+
+        for (int i = 0; i < size; ++i)
+        {
+            booleans[i] = (i % 3 == 0);
+            chars[i]    = (char)(i * 31);
+            shorts[i]   = (short)(i * -17);
+            ints[i]     = i * 1234567;
+            longs[i]    = i * 1234567890123L;
+            floats[i]   = i * 1.5F;
+            doubles[i]  = i * -2.5;
+        }
+
+        Digest expected = sha1();
+        Digest actual   = sha1();
+
+        actual.update((byte)7);
+        expected.update((byte)7);
+
+        for (int i = 3; i < size; ++i)
+        {
+            expected.update(booleans[i]);
+        }
+        for (int i = 3; i < size; ++i)
+        {
+            expected.update(chars[i]);
+        }
+        for (int i = 3; i < size; ++i)
+        {
+            expected.update(shorts[i]);
+        }
+        for (int i = 3; i < size; ++i)
+        {
+            expected.update(ints[i]);
+        }
+        for (int i = 3; i < size; ++i)
+        {
+            expected.update(longs[i]);
+        }
+        for (int i = 3; i < size; ++i)
+        {
+            expected.update(floats[i]);
+        }
+        for (int i = 3; i < size; ++i)
+        {
+            expected.update(doubles[i]);
+        }
+
+        actual.update(booleans, 3, size - 3)
+              .update(chars,    3, size - 3)
+              .update(shorts,   3, size - 3)
+              .update(ints,     3, size - 3)
+              .update(longs,    3, size - 3)
+              .update(floats,   3, size - 3)
+              .update(doubles,  3, size - 3);
+
+        assertEquals(expected.digestAsString(), actual.digestAsString());
+    }
+
+
+    @Test
+    public void test30() throws Exception
+    {
+        String[] inputs = {
+            "",
+            "Hello, world.",
+            "caf\u00e9 \u65e5\u672c\u8a9e \uD83D\uDE00",
+            "unpaired \uD83D high",
+            "unpaired \uDE00 low",
+            "trailing high \uD83D",
+            "\uDE00\uD83D reversed",
+        };
+
+        for (String input : inputs)
+        {
+            String expected = sha1().update(input.getBytes("UTF-8")).digestAsString();
+            String actual   = sha1().update(input).digestAsString();
+
+            assertEquals(input, expected, actual);
+        }
+
+        // A long string which crosses the boundary of the staging buffer
+        // at various positions.
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < 3000; ++i)
+        {
+            switch (i % 7)
+            {
+                case 0:  sb.append('a');                  break;
+                case 1:  sb.append('\u00e9');             break;
+                case 2:  sb.append('\u3042');             break;
+                case 3:  sb.append("\uD83D\uDE00");       break;
+                case 4:  sb.append("0123456789");         break;
+                case 5:  sb.append('\uD800');             break;
+                default: sb.append((char)(i & 0x7FF));    break;
+            }
+
+            String input = sb.toString();
+
+            if (i % 97 == 0 || 2990 < i)
+            {
+                String expected = sha1().update(input.getBytes("UTF-8")).digestAsString();
+                String actual   = sha1().update(input).digestAsString();
+
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
+
+    @Test
+    public void test31() throws Exception
+    {
+        Digest digest = sha1();
+
+        assertEquals(EnumSet.of(SORT_JSON_OBJECT_ENTRY_KEYS), digest.getFeatures());
+
+        digest.setFeatures(EnumSet.of(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL, IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_ZERO));
+
+        assertTrue(digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL));
+        assertTrue(digest.isEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_ZERO));
+        assertFalse(digest.isEnabled(SORT_JSON_OBJECT_ENTRY_KEYS));
+
+        // Features are copied to a clone and are independent of the original.
+        Digest cloned = (Digest)digest.clone();
+        cloned.setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, true);
+
+        assertFalse(digest.isEnabled(SORT_JSON_OBJECT_ENTRY_KEYS));
+        assertEquals(EnumSet.of(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL, IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_ZERO,
+                SORT_JSON_OBJECT_ENTRY_KEYS), cloned.getFeatures());
+    }
+
+
+    private static class Point
+    {
+        final int x;
+        final int y;
+
+
+        Point(int x, int y)
+        {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+
+    @Test
+    public void test32()
+    {
+        Digest.registerUpdater(Point.class, new DigestUpdater<Point>() {
+            @Override
+            public void update(Digest digest, Point input)
+            {
+                digest.update(input.x).update(input.y);
+            }
+        });
+
+        try
+        {
+            String digest1 = md5().update((Object)new Point(1, 2)).digestAsString();
+            String digest2 = md5().update(1).update(2).digestAsString();
+
+            assertEquals(digest1, digest2);
+
+            // Elements of Iterable and Object[] are dispatched, too.
+            List<Object> list = new ArrayList<Object>();
+            list.add(new Point(1, 2));
+            list.add(new Short[] { Short.valueOf((short)3) });
+
+            String digest3 = md5().update(list).digestAsString();
+            String digest4 = md5().update(new Point(1, 2), new Short[] { Short.valueOf((short)3) }).digestAsString();
+            String digest5 = md5().update(1).update(2).update((short)3).digestAsString();
+
+            assertEquals(digest5, digest3);
+            assertEquals(digest5, digest4);
+        }
+        finally
+        {
+            Digest.unregisterUpdater(Point.class);
+        }
+
+        // Objects of unsupported classes are ignored.
+        assertEquals(md5().digestAsString(), md5().update((Object)new Point(1, 2)).digestAsString());
+    }
+
+
+    @Test
+    public void test33() throws Exception
+    {
+        String expected = "2ae01472317d1935a84797ec1983ae243fc6aa28";
+
+        // ByteBuffer
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(30);
+        byteBuffer.position(5);
+        assertEquals(20, sha1().update("Hello, world.").digestTo(byteBuffer));
+        assertEquals(25, byteBuffer.position());
+        byte[] bytes = new byte[20];
+        byteBuffer.position(5);
+        byteBuffer.get(bytes);
+        assertEquals(expected, Digest.bytesToHex(bytes));
+
+        // byte[]
+        bytes = new byte[22];
+        assertEquals(20, sha1().update("Hello, world.").digestTo(bytes, 2));
+        assertEquals(expected, Digest.bytesToHex(bytes).substring(4));
+
+        // char[]
+        char[] chars = new char[41];
+        assertEquals(40, sha1().update("Hello, world.").digestAsHex(chars, 1));
+        assertEquals(expected, new String(chars, 1, 40));
+
+        // StringBuilder
+        StringBuilder builder = new StringBuilder("etag:");
+        assertEquals("etag:" + expected, sha1().update("Hello, world.").digestAsHex(builder).toString());
+
+        // Appendable
+        Appendable appendable = new StringBuffer();
+        assertEquals(expected, sha1().update("Hello, world.").digestAsHex(appendable).toString());
+
+        // long
+        assertEquals(0x2ae01472317d1935L, sha1().update("Hello, world.").digestAsLong());
+
+        try
+        {
+            sha1().digestTo(new byte[20], 1);
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+
+    @Test
+    public void test34()
+    {
+        byte[] bytes = new byte[70];
+
+        for (int i = 0; i < bytes.length; ++i)
+        {
+            bytes[i] = (byte)(i * 37 + 11);
+        }
+
+        // Lengths which cover all the remainders of Base64 and Base32.
+        for (int length = 0; length <= bytes.length; ++length)
+        {
+            byte[] input = new byte[length];
+            System.arraycopy(bytes, 0, input, 0, length);
+
+            assertEquals(Hex.encodeHexString(input), DigestEncoding.HEX.encode(input));
+            assertEquals(Base64.encodeBase64String(input), DigestEncoding.BASE64.encode(input));
+            assertEquals(Base64.encodeBase64URLSafeString(input), DigestEncoding.BASE64URL.encode(input));
+            assertEquals(new Base32().encodeAsString(input), DigestEncoding.BASE32.encode(input));
+        }
+
+        assertEquals("KuAUcjF9GTWoR5fsGYOuJD/Gqig=",
+                sha1().update("Hello, world.").digestAsString(DigestEncoding.BASE64));
+        assertEquals("KuAUcjF9GTWoR5fsGYOuJD_Gqig",
+                sha1().update("Hello, world.").digestAsString(DigestEncoding.BASE64URL));
+        assertEquals(sha1().update("Hello, world.").digestAsString(new Base32()),
+                sha1().update("Hello, world.").digestAsString(DigestEncoding.BASE32));
+        assertEquals(sha1().digestAsString("Hello, world.".getBytes()),
+                sha1().digestAsString("Hello, world.".getBytes(), DigestEncoding.HEX));
+    }
+
+
+    @Test
+    public void test35() throws Exception
+    {
+        final String expected = "2ae01472317d1935a84797ec1983ae243fc6aa28";
+
+        // Instances created from the cached prototype are independent.
+        Digest digest1 = Digest.getInstance("SHA-1");
+        Digest digest2 = Digest.getInstance("SHA-1");
+        Digest digest3 = Digest.getInstance("SHA-1", digest1.getProvider());
+        Digest digest4 = Digest.getInstance("SHA-1", digest1.getProvider().getName());
+
+        assertTrue(digest1.getWrappedMessageDigest() != digest2.getWrappedMessageDigest());
+
+        digest1.update("Hello, ");
+        digest2.update("Hello, world.");
+        digest3.update("Hello, world.");
+        digest4.update("Hello, world.");
+        digest1.update("world.");
+
+        assertEquals(expected, digest1.digestAsString());
+        assertEquals(expected, digest2.digestAsString());
+        assertEquals(expected, digest3.digestAsString());
+        assertEquals(expected, digest4.digestAsString());
+
+        // Concurrent creation.
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        Thread[] threads = new Thread[8];
+
+        for (int i = 0; i < threads.length; ++i)
+        {
+            threads[i] = new Thread() {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < 100; ++j)
+                    {
+                        results.add(Digest.getInstanceSHA1().update("Hello, world.").digestAsString());
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(800, results.size());
+
+        for (String result : results)
+        {
+            assertEquals(expected, result);
+        }
+
+        try
+        {
+            Digest.getInstance("NO-SUCH-ALGORITHM");
+            fail();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+        }
+    }
+
+
+    private static byte[] randomBytes(int size)
+    {
+        byte[] bytes = new byte[size];
+
+        new Random(size).nextBytes(bytes);
+
+        return bytes;
+    }
+
+
+    private static Path createTempFile(byte[] content) throws IOException
+    {
+        Path path = Files.createTempFile("nv-digest", ".bin");
+
+        path.toFile().deleteOnExit();
+
+        return Files.write(path, content);
+    }
+
+
+    @Test
+    public void test36() throws IOException
+    {
+        // Smaller and larger than the mapping threshold.
+        for (int size : new int[] { 0, 1, 1000, 300 * 1024, 1024 * 1024 + 17 })
+        {
+            byte[] content = randomBytes(size);
+            Path path = createTempFile(content);
+            String expected = sha1().update(content).digestAsString();
+
+            assertEquals(expected, sha1().update(path).digestAsString());
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+            {
+                // Small windows.
+                assertEquals(expected, sha1().update(channel, 0, size, 4096).digestAsString());
+
+                // Ranges beyond the end of the file are clamped.
+                assertEquals(expected, sha1().update(channel, 0, Long.MAX_VALUE).digestAsString());
+
+                if (size < 2)
+                {
+                    continue;
+                }
+
+                // A partial range.
+                int offset = size / 3;
+                int length = size / 2;
+
+                assertEquals(sha1().update(content, offset, length).digestAsString(),
+                        sha1().update(channel, offset, length, 65536).digestAsString());
+
+                // The position of the channel is not changed.
+                assertEquals(0, channel.position());
+            }
+
+            Files.delete(path);
+        }
+    }
+
+
+    @Test
+    public void test37() throws IOException
+    {
+        byte[] content = randomBytes(3 * 1024 * 1024 + 5);
+        String expected = sha1().update(content).digestAsString();
+        Digest digest = sha1();
+
+        // A source which fills the buffer every time.
+        assertEquals(content.length, digest.drain(new ByteArrayInputStream(content)));
+        assertEquals(expected, digest.digestAsString());
+
+        // The buffer is reused, and data staged before the call is kept.
+        assertEquals(expected, digest.update(content[0])
+                .update(new ByteArrayInputStream(content, 1, content.length - 1)).digestAsString());
+
+        // A source which returns small chunks.
+        InputStream slow = new FilterInputStream(new ByteArrayInputStream(content)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                return super.read(b, off, Math.min(len, 100));
+            }
+        };
+
+        assertEquals(expected, sha1().update(slow).digestAsString());
+
+        // Channels
+        assertEquals(content.length, digest.drain(Channels.newChannel(new ByteArrayInputStream(content))));
+        assertEquals(expected, digest.digestAsString());
+
+        // Empty sources
+        assertEquals(0, digest.drain(new ByteArrayInputStream(new byte[0])));
+        assertEquals(sha1().digestAsString(), digest.digestAsString());
+    }
+
+
+    @Test
+    public void test38() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try
+        {
+            for (int size : new int[] { 0, 10, 256 * 1024, 1024 * 1024 + 3 })
+            {
+                byte[] content = randomBytes(size);
+                Path path = createTempFile(content);
+                final AtomicLong progress = new AtomicLong();
+
+                CompletableFuture<byte[]> future = sha1().digestAsync(path, executor, new LongConsumer() {
+                    @Override
+                    public void accept(long value)
+                    {
+                        progress.set(value);
+                    }
+                });
+
+                assertEquals(sha1().update(content).digestAsString(), Digest.bytesToHex(future.get()));
+                assertEquals(size, progress.get());
+
+                Files.delete(path);
+            }
+
+            // A missing file.
+            try
+            {
+                sha1().digestAsync(Files.createTempDirectory("nv-digest").resolve("none"), executor).get();
+                fail();
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void test39()
+    {
+        String[] strings = new String[1000];
+        List<byte[]> arrays = new ArrayList<byte[]>();
+
+        for (int i = 0; i < strings.length; ++i)
+        {
+            strings[i] = (i == 7) ? null : "item-" + i + "-\u00E9";
+            arrays.add((i == 7) ? null : randomBytes(i % 100));
+        }
+
+        byte[] expectedStrings = new byte[strings.length * 20];
+        byte[] expectedArrays  = new byte[strings.length * 20];
+
+        for (int i = 0; i < strings.length; ++i)
+        {
+            byte[] array = arrays.get(i);
+
+            System.arraycopy(sha1().update(strings[i]).digest(), 0, expectedStrings, i * 20, 20);
+            System.arraycopy(sha1().update(array == null ? new byte[0] : array).digest(), 0, expectedArrays, i * 20, 20);
+        }
+
+        // Pending data is discarded.
+        Digest digest = sha1().update("garbage");
+
+        assertTrue(Arrays.equals(expectedStrings, digest.digestAll(strings)));
+        assertTrue(Arrays.equals(expectedArrays, digest.digestAll(arrays)));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try
+        {
+            assertTrue(Arrays.equals(expectedStrings, digest.digestAll(strings, pool)));
+            assertTrue(Arrays.equals(expectedArrays, digest.digestAll(arrays, pool)));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        // The instance is reset afterwards.
+        assertEquals(sha1().digestAsString(), digest.digestAsString());
+        assertEquals(0, digest.digestAll(new String[0]).length);
+    }
+
+
+    private static final String[] SORTED_JSONS = {
+        "",
+        "null",
+        "\"text\"",
+        "-0",
+        "[]",
+        "{}",
+        "[1, 2.50, -3e2, 0.0, 12345678901, 123456789012345678901234567890, 1.0e-7, true, false, null, \"\"]",
+        "{\"a\":0, \"b\":0.00, \"c\":false, \"d\":\"\", \"e\":[], \"f\":{}, \"g\":null, \"h\":true}",
+        "{\"a\":[[], {}, [[]], {\"x\":{}}], \"b\":{\"c\":[0], \"d\":{\"e\":null}}, \"z\":[{}]}",
+        "{\"a\":[1,[2,[3,[4,{\"b\":[5]}]]]], \"c\":\"\\u00E9\\uD83D\\uDE00\"}",
+        "{\"a\":1} [2]",
+    };
+
+
+    @Test
+    public void test40() throws IOException
+    {
+        // Keys are already sorted, so the streaming mode (keys not sorted)
+        // and the tree-based mode (keys sorted) must produce the same digest.
+        for (String json : SORTED_JSONS)
+        {
+            for (int mask = 0; mask < 64; ++mask)
+            {
+                Digest tree   = sha1();
+                Digest stream = sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false);
+
+                for (Digest digest : new Digest[] { tree, stream })
+                {
+                    digest.setEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL,         (mask &  1) != 0);
+                    digest.setEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_FALSE,        (mask &  2) != 0);
+                    digest.setEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_ZERO,         (mask &  4) != 0);
+                    digest.setEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_STRING, (mask &  8) != 0);
+                    digest.setEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_ARRAY,  (mask & 16) != 0);
+                    digest.setEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_OBJECT, (mask & 32) != 0);
+                    digest.update("prefix").updateJson(json);
+                }
+
+                assertEquals(json + " " + mask, tree.digestAsString(), stream.digestAsString());
+            }
+        }
+
+        // Duplicate keys: the last value wins as in the tree-based mode.
+        assertEquals(
+            sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false).updateJson("{\"a\":2,\"b\":3}").digestAsString(),
+            sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false).updateJson("{\"a\":1,\"b\":3,\"a\":2}").digestAsString());
+
+        // Syntax errors are reported and the digest is left untouched.
+        Digest digest = sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false).update("Hello, world.");
+
+        try
+        {
+            digest.updateJson("{\"a\":[1,2}");
+            fail();
+        }
+        catch (IOException e)
+        {
+        }
+
+        assertEquals("2ae01472317d1935a84797ec1983ae243fc6aa28", digest.digestAsString());
+    }
+
+
+    private static String largeJson()
+    {
+        // The structural marks of this JSON do not fit in memory
+        // kept by the updater, so they are generated by replaying.
+        StringBuilder builder = new StringBuilder("{\"items\":[");
+
+        for (int i = 0; i < 2000; ++i)
+        {
+            if (i != 0)
+            {
+                builder.append(",");
+            }
+
+            builder.append("{\"flag\":").append(i % 2 == 0)
+                   .append(",\"id\":").append(i)
+                   .append(",\"name\":\"item").append(i)
+                   .append("\",\"none\":null,\"ratio\":").append(i).append(".50")
+                   .append(",\"tags\":[").append(i % 3 == 0 ? "" : "\"a\",{}")
+                   .append("]}");
+        }
+
+        return builder.append("]}").toString();
+    }
+
+
+    @Test
+    public void test41() throws IOException
+    {
+        String json = largeJson();
+        String expected = "15e02f5c6d64cbe4cda51e2e43083fe29bc3ae17";
+
+        assertEquals(expected, sha1().updateJson(json).digestAsString());
+        assertEquals(expected, sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false).updateJson(json).digestAsString());
+
+        // The ignore features apply while replaying, too.
+        Digest tree   = sha1();
+        Digest stream = sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false);
+
+        for (Digest digest : new Digest[] { tree, stream })
+        {
+            digest.setEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_NULL,        true);
+            digest.setEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_FALSE,       true);
+            digest.setEnabled(IGNORE_JSON_OBJECT_ENTRY_WITH_VALUE_EMPTY_ARRAY, true);
+            digest.update("prefix").updateJson(json).updateJson("[1]");
+        }
+
+        assertEquals(tree.digestAsString(), stream.digestAsString());
+    }
+
+
+    @Test
+    public void test42() throws IOException
+    {
+        // A nested field with the same name must not shadow the field.
+        assertNotEquals(
+            sha1().updateJson("{\"a\":{\"b\":1},\"b\":1}").digestAsString(),
+            sha1().updateJson("{\"a\":{\"b\":1},\"b\":2}").digestAsString());
+
+        assertEquals(
+            sha1().updateJson("{\"b\":2,\"a\":{\"b\":1}}").digestAsString(),
+            sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false).updateJson("{\"a\":{\"b\":1},\"b\":2}").digestAsString());
+
+        // A wide object whose keys are given in reverse order.
+        StringBuilder reversed = new StringBuilder("{");
+        StringBuilder sorted   = new StringBuilder("{");
+
+        for (int i = 0; i < 5000; ++i)
+        {
+            reversed.append(i == 0 ? "" : ",").append(String.format("\"k%04d\":%d", 4999 - i, 4999 - i));
+            sorted  .append(i == 0 ? "" : ",").append(String.format("\"k%04d\":%d", i, i));
+        }
+
+        assertEquals(
+            sha1().updateJson(reversed.append("}").toString()).digestAsString(),
+            sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false).updateJson(sorted.append("}").toString()).digestAsString());
+    }
+
+
+    private static String repeat(String string, int count)
+    {
+        StringBuilder builder = new StringBuilder(string.length() * count);
+
+        for (int i = 0; i < count; ++i)
+        {
+            builder.append(string);
+        }
+
+        return builder.toString();
+    }
+
+
+    @Test
+    public void test43() throws IOException
+    {
+        // Nested arrays deeper than the thread stack allows recursion.
+        int depth = 100000;
+        String json = repeat("[", depth) + repeat("]", depth);
+
+        // Arrays have no content, so only the structural marks are hashed.
+        String expected = sha1().update(
+            "P" + repeat("AE", depth - 1) + "Aa" + repeat("ea", depth - 1) + "p").digestAsString();
+
+        assertEquals(expected, sha1().setJsonMaxDepth(depth).updateJson(json).digestAsString());
+        assertEquals(expected, sha1().setJsonMaxDepth(depth)
+            .setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false).updateJson(json).digestAsString());
+
+        // Deeply nested objects.
+        String objects = repeat("{\"a\":", depth - 1) + "{}" + repeat("}", depth - 1);
+
+        assertEquals(
+            sha1().setJsonMaxDepth(depth).updateJson(objects).digestAsString(),
+            sha1().setJsonMaxDepth(depth).setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false).updateJson(objects).digestAsString());
+
+        // The default maximum depth.
+        assertEquals(Digest.DEFAULT_JSON_MAX_DEPTH, sha1().getJsonMaxDepth());
+        sha1().updateJson(repeat("[", 1000) + repeat("]", 1000));
+
+        for (boolean sortKeys : new boolean[] { true, false })
+        {
+            Digest digest = sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys).setJsonMaxDepth(10);
+
+            digest.updateJson(repeat("[", 10) + repeat("]", 10));
+
+            try
+            {
+                digest.updateJson(repeat("[", 11) + repeat("]", 11));
+                fail();
+            }
+            catch (IOException e)
+            {
+            }
+        }
+    }
+
+
+    @Test
+    public void test44() throws IOException
+    {
+        List<String> jsons = new ArrayList<String>(Arrays.asList(SORTED_JSONS));
+        jsons.add("{\"b\":[1,{\"d\":null,\"c\":\"\u00E9\"}],\"a\":1.50}");
+        jsons.add("{\"a\":1,\"b\":3,\"a\":2}");
+        jsons.add(largeJson());
+
+        for (String json : jsons)
+        {
+            byte[] bytes = json.getBytes("UTF-8");
+            byte[] padded = new byte[bytes.length + 4];
+            System.arraycopy(bytes, 0, padded, 2, bytes.length);
+            Path file = createTempFile(bytes);
+
+            for (boolean sortKeys : new boolean[] { true, false })
+            {
+                String expected = sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys).updateJson(json).digestAsString();
+
+                ByteBuffer heap = ByteBuffer.wrap(padded, 2, bytes.length);
+                ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+                direct.put(bytes);
+                direct.flip();
+
+                Digest[] digests = {
+                    sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys).updateJson(bytes),
+                    sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys).updateJson(padded, 2, bytes.length),
+                    sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys).updateJson(heap),
+                    sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys).updateJson(direct),
+                    sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys).updateJson(new ByteArrayInputStream(bytes)),
+                    sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys).updateJson(new StringReader(json)),
+                    sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys).updateJson(file),
+                    sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys).updateJson(json.getBytes("UTF-16BE")),
+                };
+
+                for (int i = 0; i < digests.length; ++i)
+                {
+                    assertEquals(json + " " + i, expected, digests[i].digestAsString());
+                }
+
+                // The buffers are consumed.
+                assertFalse(heap.hasRemaining());
+                assertFalse(direct.hasRemaining());
+            }
+
+            Files.delete(file);
+        }
+
+        // The stream is not closed.
+        final boolean[] closed = { false };
+        InputStream in = new FilterInputStream(new ByteArrayInputStream("[1]".getBytes("UTF-8"))) {
+            @Override
+            public void close() throws IOException
+            {
+                closed[0] = true;
+            }
+        };
+
+        sha1().updateJson(in);
+        assertFalse(closed[0]);
+    }
+
+
+    @Test
+    public void test45() throws IOException
+    {
+        List<String> jsons = new ArrayList<String>(Arrays.asList(SORTED_JSONS));
+        jsons.add("{\"b\":[1,{\"d\":null,\"c\":\"\u00E9\"}],\"a\":1.50,\"e\":-3e2}");
+        jsons.add("{\"a\":1,\"b\":3,\"a\":2}");
+        jsons.add(largeJson());
+
+        // Floating point numbers are parsed as double by default.
+        ObjectMapper mapper = new ObjectMapper();
+
+        for (String json : jsons)
+        {
+            for (boolean sortKeys : new boolean[] { true, false })
+            {
+                String expected = sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys).updateJson(json).digestAsString();
+
+                assertEquals(json, expected, sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys)
+                    .updateJson(mapper.readTree(json)).digestAsString());
+
+                JsonParser parser = mapper.getFactory().createParser(json);
+
+                assertEquals(json, expected, sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys)
+                    .updateJson(parser).digestAsString());
+
+                parser.close();
+            }
+        }
+
+        // A parser located in the middle of a JSON.
+        JsonParser parser = mapper.getFactory().createParser("[{\"a\":1},{\"b\":2}]");
+        parser.nextToken();
+        parser.nextToken();
+
+        assertEquals(
+            sha1().updateJson("{\"a\":1}").digestAsString(),
+            sha1().updateJson(parser).digestAsString());
+
+        // The parser is not closed and can be read further.
+        assertFalse(parser.isClosed());
+        assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+
+        assertEquals(
+            sha1().updateJson("{\"b\":2}").digestAsString(),
+            sha1().updateJson(parser).digestAsString());
+
+        parser.close();
+
+        // The maximum depth applies to node trees, too.
+        try
+        {
+            sha1().setJsonMaxDepth(2).updateJson(mapper.readTree("[[[]]]"));
+            fail();
+        }
+        catch (IOException e)
+        {
+        }
+    }
+
+
+    @Test
+    public void test46() throws Exception
+    {
+        final String json = "{\"b\":[1,{\"d\":null,\"c\":\"\u00E9\"}],\"a\":1.50}";
+        final String expected = sha1().updateJson(json).digestAsString();
+        final String[] inner = new String[1];
+
+        // updateJson() called while another updateJson() on the same
+        // thread is reading a stream.
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(json.getBytes("UTF-8"))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                if (inner[0] == null)
+                {
+                    inner[0] = sha1().updateJson("[1]").digestAsString();
+                }
+
+                return super.read(b, off, len);
+            }
+        };
+
+        assertEquals(expected, sha1().updateJson(in).digestAsString());
+        assertEquals(sha1().updateJson("[1]").digestAsString(), inner[0]);
+
+        // Custom and default maximum depths alternately.
+        assertEquals(expected, sha1().setJsonMaxDepth(3).updateJson(json).digestAsString());
+        assertEquals(expected, sha1().updateJson(json).digestAsString());
+        assertEquals(expected, sha1().setJsonMaxDepth(3).updateJson(json).digestAsString());
+
+        // Threads share the mapper.
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try
+        {
+            List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+
+            for (int i = 0; i < 64; ++i)
+            {
+                final boolean sortKeys = (i % 2 == 0);
+
+                futures.add(CompletableFuture.supplyAsync(new Supplier<String>() {
+                    @Override
+                    public String get()
+                    {
+                        try
+                        {
+                            return sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, sortKeys)
+                                .updateJson(json).digestAsString();
+                        }
+                        catch (IOException e)
+                        {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }, executor));
+            }
+
+            String unsorted = sha1().setEnabled(SORT_JSON_OBJECT_ENTRY_KEYS, false).updateJson(json).digestAsString();
+
+            for (int i = 0; i < futures.size(); ++i)
+            {
+                assertEquals((i % 2 == 0) ? expected : unsorted, futures.get(i).get());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
 }
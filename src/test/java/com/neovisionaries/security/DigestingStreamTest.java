@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Random;
+import org.junit.Test;
+
+
+public class DigestingStreamTest
+{
+    private static final byte[] CONTENT = "Hello, world.".getBytes();
+    private static final String EXPECTED = "2ae01472317d1935a84797ec1983ae243fc6aa28";
+
+
+    @Test
+    public void test1() throws IOException
+    {
+        Digest digest = Digest.getInstanceSHA1();
+        DigestingInputStream in = new DigestingInputStream(new ByteArrayInputStream(CONTENT), digest);
+
+        assertSame(digest, in.getDigest());
+        assertFalse(in.markSupported());
+
+        byte[] buffer = new byte[CONTENT.length];
+
+        assertEquals('H', in.read());
+        assertEquals(4, in.read(buffer, 1, 4));
+        assertEquals(3, in.skip(3));
+        assertEquals(5, in.read(buffer, 0, 10));
+        assertEquals(-1, in.read());
+
+        // Skipped bytes are included.
+        assertEquals(EXPECTED, in.getDigest().digestAsString());
+    }
+
+
+    @Test
+    public void test2() throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DigestingOutputStream out = new DigestingOutputStream(baos, Digest.getInstanceSHA1());
+
+        out.write(CONTENT[0]);
+        out.write(CONTENT, 1, CONTENT.length - 1);
+        out.close();
+
+        assertEquals(EXPECTED, out.getDigest().digestAsString());
+        assertArrayEquals(CONTENT, baos.toByteArray());
+    }
+
+
+    @Test
+    public void test3() throws IOException
+    {
+        DigestingReadableByteChannel in = new DigestingReadableByteChannel(
+                Channels.newChannel(new ByteArrayInputStream(CONTENT)), Digest.getInstanceSHA1());
+
+        // Data before the position must not be hashed.
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put((byte)'X');
+
+        while (in.read(buffer) >= 0)
+        {
+        }
+
+        assertEquals(1 + CONTENT.length, buffer.position());
+        assertEquals(EXPECTED, in.getDigest().digestAsString());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DigestingWritableByteChannel out = new DigestingWritableByteChannel(
+                Channels.newChannel(baos), Digest.getInstanceSHA1());
+
+        buffer.flip();
+        buffer.get();
+        out.write(buffer);
+
+        assertEquals(0, buffer.remaining());
+        assertEquals(EXPECTED, out.getDigest().digestAsString());
+        assertArrayEquals(CONTENT, baos.toByteArray());
+    }
+
+
+    @Test
+    public void test4() throws IOException
+    {
+        byte[] content = new byte[50001];
+        new Random(1).nextBytes(content);
+
+        final int[] reads = { 0 };
+        InputStream source = new FilterInputStream(new ByteArrayInputStream(content)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                ++reads[0];
+
+                return super.read(b, off, len);
+            }
+        };
+
+        DigestingInputStream in = new DigestingInputStream(source, Digest.getInstanceSHA1());
+
+        // A small skip must not make later skips read byte by byte.
+        assertEquals(1, in.skip(1));
+        assertEquals(50000, in.skip(50000));
+        assertTrue(reads[0] <= 8);
+
+        assertEquals(Digest.getInstanceSHA1().update(content).digestAsString(), in.getDigest().digestAsString());
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+
+public class DirectoryDigesterTest
+{
+    @Test
+    public void test1() throws IOException, NoSuchAlgorithmException
+    {
+        Path root = Files.createTempDirectory("nv-digest");
+        Random random = new Random(1);
+        List<String> names = new ArrayList<String>();
+
+        Files.createDirectories(root.resolve("a/b"));
+        Files.createDirectories(root.resolve("c"));
+
+        for (int i = 0; i < 300; ++i)
+        {
+            String name = (i % 3 == 0) ? "a/b/f" + i : (i % 3 == 1) ? "c/f" + i : "f" + i;
+            byte[] content = new byte[(i % 50 == 0) ? 200 * 1024 + i : random.nextInt(2000)];
+            random.nextBytes(content);
+
+            Files.write(root.resolve(name), content);
+            names.add(name);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try
+        {
+            SortedMap<String, byte[]> manifest =
+                    new DirectoryDigester(DigestSpec.getInstance("SHA-256"), pool)
+                    .setLargeFileThreshold(100 * 1024).digest(root);
+
+            assertEquals(300, manifest.size());
+
+            String[] sorted = names.toArray(new String[names.size()]);
+            Arrays.sort(sorted);
+            assertArrayEquals(sorted, manifest.keySet().toArray());
+
+            for (String name : names)
+            {
+                byte[] expected = Digest.getInstanceSHA256()
+                        .update(Files.readAllBytes(root.resolve(name))).digest();
+
+                assertArrayEquals(name, expected, manifest.get(name));
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+            delete(root);
+        }
+    }
+
+
+    private static void delete(Path root) throws IOException
+    {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+            {
+                Files.delete(file);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException
+            {
+                Files.delete(dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+
+    @Test
+    public void test2() throws Exception
+    {
+        // 6 large tasks followed by 40 small tasks, as scheduled by
+        // DirectoryDigester.
+        final int largeCount = 6;
+        final int parallelism = 4;
+        final AtomicInteger counter = new AtomicInteger();
+        final int[] positions = new int[largeCount + 40];
+        final List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+
+        for (int i = 0; i < positions.length; ++i)
+        {
+            final int index = i;
+            final long millis = (i < largeCount) ? 100 : 5;
+
+            tasks.add(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute()
+                {
+                    positions[index] = counter.incrementAndGet();
+
+                    try
+                    {
+                        Thread.sleep(millis);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try
+        {
+            pool.submit(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute()
+                {
+                    DirectoryDigester.invokeInOrder(tasks);
+                }
+            }).get();
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertEquals(positions.length, counter.get());
+
+        // The large tasks are started before the workers take small
+        // tasks, apart from those the current worker runs meanwhile.
+        for (int i = 0; i < largeCount; ++i)
+        {
+            assertTrue("L" + i + " started at " + positions[i], positions[i] <= largeCount + parallelism);
+        }
+    }
+}
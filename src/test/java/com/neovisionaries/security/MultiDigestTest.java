@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import java.security.MessageDigest;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Test;
+
+
+public class MultiDigestTest
+{
+    private static final String[] ALGORITHMS = { "MD5", "SHA-1", "SHA-256" };
+
+
+    private static String[] expected(byte[] content) throws NoSuchAlgorithmException
+    {
+        String[] values = new String[ALGORITHMS.length];
+
+        for (int i = 0; i < ALGORITHMS.length; ++i)
+        {
+            values[i] = Digest.getInstance(ALGORITHMS[i])
+                    .update("Hello").update(123).update(content).digestAsString();
+        }
+
+        return values;
+    }
+
+
+    private static void verify(MultiDigest digest) throws Exception
+    {
+        byte[] content = new byte[1024 * 1024 + 7];
+        new Random(1).nextBytes(content);
+
+        String[] expected = expected(content);
+
+        assertArrayEquals(ALGORITHMS, digest.getAlgorithms());
+
+        digest.update("Hello").update(123).update(content);
+        assertArrayEquals(expected, digest.digestsAsStrings());
+
+        // Reset after digests().
+        digest.update("Hello").update(123);
+        assertArrayEquals(expected(new byte[0]), digest.digestsAsStrings());
+
+        // reset() discards pending data.
+        digest.update(content).reset();
+
+        // Clone in the middle.
+        digest.update("Hello").update(123);
+        MultiDigest cloned = (MultiDigest)digest.clone();
+
+        digest.update(content);
+        cloned.update(content);
+        assertArrayEquals(expected, digest.digestsAsStrings());
+        assertArrayEquals(expected, cloned.digestsAsStrings());
+
+        // digest() returns the concatenation.
+        byte[] concatenated = digest.update("Hello").update(123).update(content).digest();
+        assertEquals(16 + 20 + 32, concatenated.length);
+        assertEquals(expected[0] + expected[1] + expected[2], Digest.bytesToHex(concatenated));
+    }
+
+
+    @Test
+    public void test1() throws Exception
+    {
+        verify(new MultiDigest(ALGORITHMS));
+    }
+
+
+    @Test
+    public void test2() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        try
+        {
+            verify(new MultiDigest(executor, ALGORITHMS));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test(timeout = 10000)
+    public void test3() throws Exception
+    {
+        // Executors which run tasks on the calling thread, and reject
+        // tasks after accepting the given number of them.
+        for (final int limit : new int[] { 0, 2 })
+        {
+            Executor executor = new Executor() {
+                private int mCount;
+
+                @Override
+                public void execute(Runnable command)
+                {
+                    if (mCount++ == limit)
+                    {
+                        throw new RejectedExecutionException();
+                    }
+
+                    command.run();
+                }
+            };
+
+            MultiDigest digest = new MultiDigest(executor, "SHA-256", "MD5");
+
+            try
+            {
+                digest.update(new byte[1 << 20]);
+                fail();
+            }
+            catch (RejectedExecutionException e)
+            {
+                // Expected.
+            }
+
+            try
+            {
+                digest.digestsAsStrings();
+                fail();
+            }
+            catch (IllegalStateException e)
+            {
+                assertEquals(RejectedExecutionException.class, e.getCause().getClass());
+            }
+
+            // Must not block.
+            digest.reset();
+        }
+    }
+
+
+    @Test(timeout = 10000)
+    public void test4() throws Exception
+    {
+        final RuntimeException failure = new RuntimeException();
+
+        MessageDigest broken = new MessageDigest("Broken") {
+            @Override
+            protected void engineUpdate(byte input)
+            {
+                throw failure;
+            }
+
+            @Override
+            protected void engineUpdate(byte[] input, int offset, int len)
+            {
+                throw failure;
+            }
+
+            @Override
+            protected byte[] engineDigest()
+            {
+                return new byte[0];
+            }
+
+            @Override
+            protected void engineReset()
+            {
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try
+        {
+            MultiDigest digest = new MultiDigest(executor, MessageDigest.getInstance("SHA-256"), broken);
+
+            digest.update(new byte[1 << 20]);
+
+            try
+            {
+                digest.digestsAsStrings();
+                fail();
+            }
+            catch (IllegalStateException e)
+            {
+                assertSame(failure, e.getCause());
+            }
+
+            // Must not block.
+            digest.reset();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void test5() throws Exception
+    {
+        // 9 * 64 = 576 bytes, longer than the staging buffer of Digest.
+        String[] algorithms = new String[9];
+        Arrays.fill(algorithms, "SHA-512");
+
+        MultiDigest digest = new MultiDigest(algorithms);
+        assertEquals(576, digest.getDigestLength());
+
+        String sha512 = Digest.getInstance("SHA-512").update("Hello").digestAsString();
+        StringBuilder expected = new StringBuilder();
+
+        for (int i = 0; i < algorithms.length; ++i)
+        {
+            expected.append(sha512);
+        }
+
+        assertEquals(expected.toString(), digest.update("Hello").digestAsString());
+        assertEquals(expected.toString(), digest.update("Hello").digestAsHex(new StringBuilder()).toString());
+
+        char[] hex = new char[576 * 2];
+        assertEquals(hex.length, digest.update("Hello").digestAsHex(hex, 0));
+        assertEquals(expected.toString(), new String(hex));
+
+        ByteBuffer buffer = ByteBuffer.allocate(576);
+        assertEquals(576, digest.update("Hello").digestTo(buffer));
+        assertEquals(expected.toString(), Digest.bytesToHex(buffer.array()));
+
+        assertEquals(Long.parseUnsignedLong(sha512.substring(0, 16), 16), digest.update("Hello").digestAsLong());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.security;
+
+
+import static org.junit.Assert.assertEquals;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+
+public class TreeDigestTest
+{
+    private static TreeDigest sha256(int leafSize) throws NoSuchAlgorithmException
+    {
+        return new TreeDigest(DigestSpec.getInstance("SHA-256"), leafSize, ForkJoinPool.commonPool());
+    }
+
+
+    private static byte[] h(byte[]... pieces)
+    {
+        Digest digest = Digest.getInstanceSHA256();
+
+        for (byte[] piece : pieces)
+        {
+            digest.update(piece);
+        }
+
+        return digest.digest();
+    }
+
+
+    @Test
+    public void test1() throws NoSuchAlgorithmException
+    {
+        byte[] input = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+
+        // Empty input
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+                Digest.bytesToHex(sha256(4).digest(new byte[0])));
+
+        // One leaf: H(0x00 || "abc")
+        assertEquals("609f6e36d2405585188d5cfd761f407c7cc46a7d3f314c88270469dde315fcd1",
+                Digest.bytesToHex(sha256(1024).digest("abc".getBytes())));
+
+        // Three leaves of one byte.
+        assertEquals("36642e73c2540ab121e3a6bf9545b0a24982cd830eb13d3cd19de3ce6c021ec1",
+                Digest.bytesToHex(sha256(1).digest("abc".getBytes())));
+
+        // Leaves of 4, 4 and 2 bytes.
+        assertEquals("ecac079d8f67718d764f4ca72782c5f63ce4744b4fd9449c30df69c1d89b5c6a",
+                Digest.bytesToHex(sha256(4).digest(input)));
+
+        // ByteBuffer
+        ByteBuffer buffer = ByteBuffer.allocateDirect(12);
+        buffer.put((byte)-1).put(input).put((byte)-1).flip();
+        buffer.position(1).limit(11);
+
+        assertEquals("ecac079d8f67718d764f4ca72782c5f63ce4744b4fd9449c30df69c1d89b5c6a",
+                Digest.bytesToHex(sha256(4).digest(buffer)));
+        assertEquals(11, buffer.position());
+    }
+
+
+    @Test
+    public void test2() throws NoSuchAlgorithmException
+    {
+        // Compare with a sequential computation of the same construction.
+        byte[] input = new byte[1000 * 1000 + 3];
+        new Random(1).nextBytes(input);
+
+        int leafSize = 4096;
+        int count = (input.length + leafSize - 1) / leafSize;
+        byte[][] hashes = new byte[count][];
+
+        for (int i = 0; i < count; ++i)
+        {
+            int start = i * leafSize;
+            int end   = Math.min(start + leafSize, input.length);
+            byte[] leaf = new byte[end - start];
+            System.arraycopy(input, start, leaf, 0, leaf.length);
+
+            hashes[i] = h(new byte[] { 0 }, leaf);
+        }
+
+        assertEquals(Digest.bytesToHex(root(hashes, 0, count)),
+                Digest.bytesToHex(sha256(leafSize).digest(input)));
+    }
+
+
+    private static byte[] root(byte[][] hashes, int from, int to)
+    {
+        if (to - from == 1)
+        {
+            return hashes[from];
+        }
+
+        int k = 1;
+
+        while (k * 2 < to - from)
+        {
+            k *= 2;
+        }
+
+        return h(new byte[] { 1 }, root(hashes, from, from + k), root(hashes, from + k, to));
+    }
+}